@@ -4,27 +4,50 @@ import android.app.Application;
 
 import com.parse.Parse;
 import com.parse.ParseObject;
+import com.parse.anydevice.data.DeviceRepository;
+import com.parse.anydevice.data.Outbox;
+import com.parse.anydevice.data.PresenceEngine;
 import com.parse.anydevice.models.Event;
 import com.parse.anydevice.models.InfrastructureKey;
 import com.parse.anydevice.models.Installation;
 import com.parse.anydevice.models.Message;
 import com.parse.anydevice.models.Model;
 import com.parse.anydevice.models.UserSession;
+import com.parse.anydevice.views.IconLoader;
 
 public class AnydeviceApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
-        // Register strongly-typed subclasses
+        final StartupTracer tracer = StartupTracer.getInstance();
+        registerActivityLifecycleCallbacks(DeferredStartup.getInstance());
+
+        // Everything up to Parse.initialize is needed before the first activity can query
+        StartupTracer.Span span = tracer.begin("register-subclasses");
         ParseObject.registerSubclass(Installation.class);
         ParseObject.registerSubclass(Event.class);
         ParseObject.registerSubclass(Model.class);
         ParseObject.registerSubclass(Message.class);
         ParseObject.registerSubclass(UserSession.class);
         ParseObject.registerSubclass(InfrastructureKey.class);
+        span.end();
 
-        // Initialize Parse
-        Parse.setLogLevel(Parse.LOG_LEVEL_DEBUG);
+        span = tracer.begin("parse-initialize");
+        Parse.setLogLevel(Constants.PARSE_LOG_LEVEL);
+        Parse.enableLocalDatastore(this);
         Parse.initialize(this, Constants.PARSE_APP_ID, Constants.PARSE_CLIENT_KEY);
+        span.end();
+
+        span = tracer.begin("device-repository");
+        DeviceRepository.initialize(this);
+        PresenceEngine.initialize(this);
+        IconLoader.initialize(this);
+        registerActivityLifecycleCallbacks(DeviceEventBus.getInstance());
+        span.end();
+
+        // Only starts reading the writes left over from the last run
+        span = tracer.begin("outbox");
+        Outbox.initialize(this);
+        span.end();
     }
 }
@@ -0,0 +1,121 @@
+package com.parse.anydevice.app;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Startup work that doesn't have to be done before the app shows something.
+ * <p/>
+ * Deferred tasks wait until the first activity has drawn its first frame and then run one after another on a
+ * background thread, each in a {@link StartupTracer} span. Tasks deferred after that run straight away.
+ * Must be used from the main thread.
+ */
+public class DeferredStartup implements Application.ActivityLifecycleCallbacks {
+    private static final DeferredStartup instance = new DeferredStartup();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final List<Runnable> pending = new ArrayList<>();
+    private boolean hasDrawnFirstFrame;
+
+    private DeferredStartup() {}
+
+    public static DeferredStartup getInstance() {
+        return instance;
+    }
+
+    /**
+     * Run a task on a background thread once the first frame has been drawn
+     *
+     * @param name Name of the task's {@link StartupTracer} span
+     * @param task The work, must not touch views
+     */
+    public void defer(@NonNull final String name, @NonNull final Runnable task) {
+        final Runnable traced = new Runnable() {
+            @Override
+            public void run() {
+                final StartupTracer.Span span = StartupTracer.getInstance().begin(name);
+                try {
+                    task.run();
+                } finally {
+                    span.end();
+                }
+            }
+        };
+        if (hasDrawnFirstFrame) {
+            executor.execute(traced);
+        } else {
+            pending.add(traced);
+        }
+    }
+
+    private void onFirstFrame() {
+        if (hasDrawnFirstFrame) {
+            return;
+        }
+        hasDrawnFirstFrame = true;
+        StartupTracer.getInstance().mark("first-frame");
+        for (Runnable task : pending) {
+            executor.execute(task);
+        }
+        pending.clear();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                StartupTracer.getInstance().dump();
+            }
+        });
+    }
+
+    @Override
+    public void onActivityResumed(final Activity activity) {
+        if (hasDrawnFirstFrame) {
+            return;
+        }
+        // Activities that hand over to another one straight away may never draw, so every resume listens
+        final View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Posted, so it runs once the frame has been drawn
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onFirstFrame();
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public void onActivityCreated(final Activity activity, final Bundle savedInstanceState) {}
+
+    @Override
+    public void onActivityStarted(final Activity activity) {}
+
+    @Override
+    public void onActivityPaused(final Activity activity) {}
+
+    @Override
+    public void onActivityStopped(final Activity activity) {}
+
+    @Override
+    public void onActivitySaveInstanceState(final Activity activity, final Bundle outState) {}
+
+    @Override
+    public void onActivityDestroyed(final Activity activity) {}
+}
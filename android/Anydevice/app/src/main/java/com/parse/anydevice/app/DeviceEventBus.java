@@ -0,0 +1,167 @@
+package com.parse.anydevice.app;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+import com.parse.anydevice.models.Installation;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * In-process delivery of device event pushes, replacing ordered broadcasts through the system.
+ * <p/>
+ * Subscribers are called in order of descending priority and may consume an event, which stops it from
+ * reaching lower priority subscribers and from being shown as a notification. Subscriptions owned by an
+ * activity end automatically when it is paused. The last event of each device is kept, so a subscriber for
+ * a single device gets the current state as soon as it subscribes.
+ * <p/>
+ * Must be used from the main thread.
+ */
+public class DeviceEventBus implements Application.ActivityLifecycleCallbacks {
+    public static final int PRIORITY_PROVISIONING = 20;
+    public static final int PRIORITY_DEVICE_SCREEN = 10;
+    public static final int PRIORITY_DEVICE_LIST = 0;
+    private static final int MAX_STICKY_DEVICES = 64;
+
+    private static final DeviceEventBus instance = new DeviceEventBus();
+
+    public interface Subscriber {
+        /**
+         * @param payload The event push
+         * @return true to consume the event
+         */
+        boolean onDeviceEvent(@NonNull final PushPayload payload);
+    }
+
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private final LruCache<String, PushPayload> sticky = new LruCache<>(MAX_STICKY_DEVICES);
+
+    private DeviceEventBus() {}
+
+    public static DeviceEventBus getInstance() {
+        return instance;
+    }
+
+    /**
+     * Subscribe to device events
+     *
+     * @param owner          Activity whose pause ends the subscription, or null to unsubscribe manually
+     * @param priority       Higher priorities are called first
+     * @param installationId Only receive events of this {@link Installation} UUID, or null for all devices.
+     *                       If set, the device's last event is delivered straight away (it can't be consumed).
+     * @param subscriber     Receives the events
+     * @return Handle to unsubscribe with
+     */
+    public Subscription subscribe(@Nullable final Activity owner, final int priority, @Nullable final String installationId,
+                                  @NonNull final Subscriber subscriber) {
+        final Subscription subscription = new Subscription(owner, priority, installationId, subscriber);
+        int index = 0;
+        while (index < subscriptions.size() && subscriptions.get(index).priority >= priority) {
+            index++;
+        }
+        subscriptions.add(index, subscription);
+
+        if (installationId != null) {
+            final PushPayload last = sticky.get(installationId);
+            if (last != null) {
+                subscriber.onDeviceEvent(last);
+            }
+        }
+        return subscription;
+    }
+
+    /**
+     * Deliver an event push to the subscribers
+     *
+     * @param payload Event push with an installation id
+     * @return true if a subscriber consumed the event
+     */
+    public boolean post(@NonNull final PushPayload payload) {
+        final String installationId = payload.getInstallationId();
+        if (installationId != null) {
+            sticky.put(installationId, payload);
+        }
+        for (Subscription subscription : new ArrayList<>(subscriptions)) {
+            if (subscription.isActive && subscription.matches(installationId) && subscription.subscriber.onDeviceEvent(payload)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param installationId The UUID of the {@link Installation}
+     * @return The last event pushed for the device since the app started, or null
+     */
+    @Nullable
+    public PushPayload getLastEvent(@NonNull final String installationId) {
+        return sticky.get(installationId);
+    }
+
+    /**
+     * Forget all last events, e.g. when logging out
+     */
+    public void clear() {
+        sticky.evictAll();
+    }
+
+    @Override
+    public void onActivityPaused(final Activity activity) {
+        final Iterator<Subscription> iterator = subscriptions.iterator();
+        while (iterator.hasNext()) {
+            final Subscription subscription = iterator.next();
+            if (subscription.owner == activity) {
+                subscription.isActive = false;
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public void onActivityCreated(final Activity activity, final Bundle savedInstanceState) {}
+
+    @Override
+    public void onActivityStarted(final Activity activity) {}
+
+    @Override
+    public void onActivityResumed(final Activity activity) {}
+
+    @Override
+    public void onActivityStopped(final Activity activity) {}
+
+    @Override
+    public void onActivitySaveInstanceState(final Activity activity, final Bundle outState) {}
+
+    @Override
+    public void onActivityDestroyed(final Activity activity) {}
+
+    public class Subscription {
+        private final Activity owner;
+        private final int priority;
+        private final String installationId;
+        private final Subscriber subscriber;
+        private boolean isActive = true;
+
+        private Subscription(final Activity owner, final int priority, final String installationId, final Subscriber subscriber) {
+            this.owner = owner;
+            this.priority = priority;
+            this.installationId = installationId;
+            this.subscriber = subscriber;
+        }
+
+        private boolean matches(final String eventInstallationId) {
+            return installationId == null || installationId.equals(eventInstallationId);
+        }
+
+        public void unsubscribe() {
+            isActive = false;
+            subscriptions.remove(this);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.parse.anydevice.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.parse.ParseInstallation;
+import com.parse.ParseObject;
+import com.parse.ParseUser;
+import com.parse.anydevice.BuildConfig;
+import com.parse.anydevice.data.Outbox;
+import com.parse.anydevice.models.Installation;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the owner of this phone's {@link Installation} up to date without saving it on every launch.
+ * <p/>
+ * The installation, owner and app version last saved are remembered locally, and a save is skipped when
+ * none of them nor any other field of the installation changed. Requests made within
+ * {@link #COALESCE_DELAY} of each other, e.g. by launches in quick succession, result in a single save of
+ * the latest one. Saves go through the {@link Outbox}, so they wait for connectivity if need be.
+ * Skipped and coalesced saves are counted. Requests can be made from any thread.
+ */
+public class InstallationOwnerSync {
+    private static final String TAG = InstallationOwnerSync.class.getName();
+    private static final String PREFERENCES_NAME = "installation_owner";
+    private static final String INSTALLATION_OBJECT_ID = "installationObjectId";
+    private static final String INSTALLATION_ID = "installationId";
+    private static final String OWNER_ID = "ownerId";
+    private static final String APP_VERSION = "appVersion";
+    private static final String AVOIDED_SAVES = "avoidedSaves";
+    private static final String COALESCED_SAVES = "coalescedSaves";
+    private static final long COALESCE_DELAY = TimeUnit.SECONDS.toMillis(2);
+
+    private static InstallationOwnerSync instance;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final SharedPreferences preferences;
+    private final Runnable saveRunnable = new Runnable() {
+        @Override
+        public void run() {
+            save();
+        }
+    };
+    private final Outbox.Listener outboxListener = new Outbox.Listener() {
+        @Override
+        public void onSaved(@NonNull final ParseObject object) {
+            if (object instanceof ParseInstallation) {
+                InstallationOwnerSync.this.onSaved((ParseInstallation) object);
+            }
+        }
+    };
+    private Installation pendingInstallation;
+    private ParseUser pendingOwner;
+
+    private InstallationOwnerSync(final Context context) {
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized InstallationOwnerSync getInstance(@NonNull final Context context) {
+        if (instance == null) {
+            instance = new InstallationOwnerSync(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Make a user the owner of an installation, saving it only if that changes anything
+     *
+     * @param installation This phone's {@link Installation}
+     * @param owner        The logged in user
+     */
+    public synchronized void associate(@NonNull final Installation installation, @NonNull final ParseUser owner) {
+        if (pendingInstallation != null) {
+            increment(COALESCED_SAVES);
+        }
+        pendingInstallation = installation;
+        pendingOwner = owner;
+        handler.removeCallbacks(saveRunnable);
+        handler.postDelayed(saveRunnable, COALESCE_DELAY);
+    }
+
+    /**
+     * @return Number of saves skipped because nothing had changed
+     */
+    public int getAvoidedSaves() {
+        return preferences.getInt(AVOIDED_SAVES, 0);
+    }
+
+    /**
+     * @return Number of saves merged into a later one
+     */
+    public int getCoalescedSaves() {
+        return preferences.getInt(COALESCED_SAVES, 0);
+    }
+
+    private void save() {
+        final Installation installation;
+        final ParseUser owner;
+        synchronized (this) {
+            installation = pendingInstallation;
+            owner = pendingOwner;
+            pendingInstallation = null;
+            pendingOwner = null;
+        }
+        if (installation == null) {
+            return;
+        }
+        if (isPersisted(installation, owner)) {
+            increment(AVOIDED_SAVES);
+            Log.i(TAG, "Phone installation unchanged, " + getAvoidedSaves() + " saves avoided");
+            return;
+        }
+
+        installation.setOwner(owner);
+        final Outbox outbox = Outbox.getInstance();
+        outbox.addListener(outboxListener);
+        outbox.enqueueSave(installation, null, Installation.OWNER);
+    }
+
+    /**
+     * Remember what was saved once the {@link Outbox} has sent it
+     */
+    private void onSaved(final ParseInstallation installation) {
+        final ParseObject owner = installation.getParseObject(Installation.OWNER);
+        if (owner == null) {
+            return;
+        }
+        Log.i(TAG, "Saved phone installation");
+        preferences.edit()
+                .putString(INSTALLATION_OBJECT_ID, installation.getObjectId())
+                .putString(INSTALLATION_ID, installation.getInstallationId())
+                .putString(OWNER_ID, owner.getObjectId())
+                .putInt(APP_VERSION, BuildConfig.VERSION_CODE)
+                .apply();
+    }
+
+    /**
+     * @return true if the installation was last saved with this owner by this app version and has no unsaved changes
+     */
+    private boolean isPersisted(final Installation installation, final ParseUser owner) {
+        final ParseUser currentOwner = installation.getOwner();
+        return installation.getObjectId() != null && !installation.isDirty()
+                && preferences.getInt(APP_VERSION, 0) == BuildConfig.VERSION_CODE
+                && currentOwner != null && TextUtils.equals(currentOwner.getObjectId(), owner.getObjectId())
+                && TextUtils.equals(preferences.getString(OWNER_ID, null), owner.getObjectId())
+                && TextUtils.equals(preferences.getString(INSTALLATION_OBJECT_ID, null), installation.getObjectId())
+                && TextUtils.equals(preferences.getString(INSTALLATION_ID, null), installation.getInstallationId());
+    }
+
+    private void increment(final String key) {
+        preferences.edit().putInt(key, preferences.getInt(key, 0) + 1).apply();
+    }
+}
@@ -6,9 +6,7 @@ import android.support.v7.app.ActionBarActivity;
 import android.util.Log;
 
 import com.parse.ParseAnalytics;
-import com.parse.ParseException;
 import com.parse.ParseUser;
-import com.parse.SaveCallback;
 import com.parse.anydevice.login.ParseLoginActivity;
 import com.parse.anydevice.models.Installation;
 import com.parse.anydevice.registered.RegisteredDevicesActivity;
@@ -23,7 +21,13 @@ public class MainActivity extends ActionBarActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        ParseAnalytics.trackAppOpenedInBackground(getIntent());
+        final Intent intent = getIntent();
+        DeferredStartup.getInstance().defer("track-app-opened", new Runnable() {
+            @Override
+            public void run() {
+                ParseAnalytics.trackAppOpenedInBackground(intent);
+            }
+        });
 
         // Login the user
         final ParseUser currentUser = ParseUser.getCurrentUser();
@@ -47,29 +51,24 @@ public class MainActivity extends ActionBarActivity {
     }
 
     private void startWithUser(final ParseUser parseUser) {
-        associateUserWithInstallation(parseUser);
+        DeferredStartup.getInstance().defer("associate-installation", new Runnable() {
+            @Override
+            public void run() {
+                associateUserWithInstallation(parseUser);
+            }
+        });
         navigateIntoApp();
     }
 
     /**
-     * Associate the current installation with the current user
+     * Associate the current installation with the current user; it is only saved if the owner changed
      *
      * @param parseUser Current {@link ParseUser}
      */
     private void associateUserWithInstallation(final ParseUser parseUser) {
         final Installation currentInstallation = Installation.getCurrentInstallation();
         if (null != currentInstallation) {
-            currentInstallation.setOwner(parseUser);
-            currentInstallation.saveInBackground(new SaveCallback() {
-                @Override
-                public void done(ParseException e) {
-                    if (e == null) {
-                        Log.i(TAG, "Saved phone installation");
-                    } else {
-                        Log.e(TAG, e.getLocalizedMessage() + ": " + e.getCode());
-                    }
-                }
-            });
+            InstallationOwnerSync.getInstance(this).associate(currentInstallation, parseUser);
         } else {
             Log.w(TAG, "Installation object is null");
         }
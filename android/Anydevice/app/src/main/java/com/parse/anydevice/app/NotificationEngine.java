@@ -0,0 +1,220 @@
+package com.parse.anydevice.app;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.TaskStackBuilder;
+import android.support.v4.util.LruCache;
+
+import com.parse.anydevice.R;
+import com.parse.anydevice.models.Installation;
+import com.parse.anydevice.registered.BlinkDeviceActivity;
+import com.parse.anydevice.registered.RegisteredDevicesActivity;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows status bar notifications for device events, off the main thread.
+ * <p/>
+ * Every device gets a single notification summarizing its latest alerts. It is updated at most once per
+ * {@link #MIN_UPDATE_INTERVAL}; alerts arriving in between are folded into the next update. State is only
+ * kept for the {@link #MAX_DEVICES} most recently active devices.
+ */
+public class NotificationEngine {
+    static final String ACTION_DISMISSED = "com.parse.anydevice.NOTIFICATION_DISMISSED";
+    static final String EXTRA_USER_SESSION_ID = "userSessionId";
+    private static final int NOTIFICATION_ID = 1;
+    private static final long MIN_UPDATE_INTERVAL = TimeUnit.SECONDS.toMillis(2);
+    private static final int MAX_DEVICES = 32;
+    private static final int MAX_LINES = 5;
+
+    private static NotificationEngine instance;
+
+    // Only touched from the executor thread
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final LruCache<String, DeviceNotification> devices = new LruCache<>(MAX_DEVICES);
+
+    private NotificationEngine() {}
+
+    public static synchronized NotificationEngine getInstance() {
+        if (instance == null) {
+            instance = new NotificationEngine();
+        }
+        return instance;
+    }
+
+    /**
+     * Queue an alert for the device's notification
+     *
+     * @param context        Received context
+     * @param result         From {@link BroadcastReceiver#goAsync()}, finished once the alert is shown
+     * @param userSessionId  Id of the device's session, used as the notification tag
+     * @param installationId {@link Installation} uuid for the device
+     * @param alert          Message to show
+     */
+    void post(@NonNull final Context context, @NonNull final BroadcastReceiver.PendingResult result, @NonNull final String userSessionId,
+              @NonNull final String installationId, @NonNull final String alert) {
+        final Context appContext = context.getApplicationContext();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                DeviceNotification device = devices.get(userSessionId);
+                if (device == null) {
+                    device = new DeviceNotification(userSessionId, installationId);
+                    devices.put(userSessionId, device);
+                }
+                device.add(alert, result);
+                schedule(appContext, device);
+            }
+        });
+    }
+
+    /**
+     * Remove the device's notification and forget its alerts, e.g. once the device has been opened
+     *
+     * @param context       Any context
+     * @param userSessionId Id of the device's session
+     */
+    public void clear(@NonNull final Context context, @NonNull final String userSessionId) {
+        final NotificationManager nm = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                reset(userSessionId);
+                nm.cancel(userSessionId, NOTIFICATION_ID);
+            }
+        });
+    }
+
+    /**
+     * Forget the device's alerts after the user dismissed its notification
+     *
+     * @param userSessionId Id of the device's session
+     */
+    void onDismissed(@NonNull final String userSessionId) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                reset(userSessionId);
+            }
+        });
+    }
+
+    private void reset(final String userSessionId) {
+        final DeviceNotification device = devices.remove(userSessionId);
+        if (device != null) {
+            device.isCancelled = true;
+            device.finishPending();
+        }
+    }
+
+    /**
+     * Show the notification now if the device's interval has passed, otherwise make sure an update is scheduled
+     */
+    private void schedule(final Context context, final DeviceNotification device) {
+        final long delay = device.lastShownAt + MIN_UPDATE_INTERVAL - SystemClock.elapsedRealtime();
+        if (delay <= 0) {
+            show(context, device);
+        } else if (!device.isScheduled) {
+            device.isScheduled = true;
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    device.isScheduled = false;
+                    show(context, device);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void show(final Context context, final DeviceNotification device) {
+        if (!device.isCancelled) {
+            final NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+            for (String line : device.lines) {
+                style.addLine(line);
+            }
+            style.setSummaryText(context.getResources().getQuantityString(R.plurals.notification_event_count, device.count, device.count));
+
+            final Notification notification = new NotificationCompat.Builder(context)
+                    .setContentTitle(device.lines.getLast())
+                    .setSmallIcon(R.drawable.anydevice)
+                    .setNumber(device.count)
+                    .setStyle(style)
+                    .setOnlyAlertOnce(true)
+                    .setContentIntent(createPendingIntent(context, device.installationId))
+                    .setDeleteIntent(createDeleteIntent(context, device.userSessionId))
+                    .setAutoCancel(true)
+                    .build();
+            final NotificationManager nm = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+            nm.notify(device.userSessionId, NOTIFICATION_ID, notification);
+            device.lastShownAt = SystemClock.elapsedRealtime();
+        }
+        device.finishPending();
+    }
+
+    /**
+     * Create a pending intent to open the device detail activity.
+     * There is one per device, updated with every notification.
+     *
+     * @param context        Received context
+     * @param installationId {@link Installation} uuid for the device
+     * @return PendingIntent
+     */
+    private static PendingIntent createPendingIntent(final Context context, final String installationId) {
+        final Intent deviceActivityIntent = BlinkDeviceActivity.getDeviceActivityIntent(context, BlinkDeviceActivity.class, installationId);
+        TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
+        stackBuilder.addParentStack(RegisteredDevicesActivity.class);
+        stackBuilder.addNextIntent(new Intent(context, RegisteredDevicesActivity.class));
+        stackBuilder.addNextIntentWithParentStack(deviceActivityIntent);
+        return stackBuilder.getPendingIntent(installationId.hashCode(), PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    private static PendingIntent createDeleteIntent(final Context context, final String userSessionId) {
+        final Intent intent = new Intent(context, PushReceiver.class);
+        intent.setAction(ACTION_DISMISSED);
+        intent.putExtra(EXTRA_USER_SESSION_ID, userSessionId);
+        return PendingIntent.getBroadcast(context, userSessionId.hashCode(), intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    private static class DeviceNotification {
+        private final String userSessionId;
+        private final String installationId;
+        private final LinkedList<String> lines = new LinkedList<>();
+        private final List<BroadcastReceiver.PendingResult> pendingResults = new ArrayList<>();
+        private int count;
+        private long lastShownAt = -MIN_UPDATE_INTERVAL;
+        private boolean isScheduled, isCancelled;
+
+        DeviceNotification(final String userSessionId, final String installationId) {
+            this.userSessionId = userSessionId;
+            this.installationId = installationId;
+        }
+
+        void add(final String alert, final BroadcastReceiver.PendingResult result) {
+            lines.addLast(alert);
+            if (lines.size() > MAX_LINES) {
+                lines.removeFirst();
+            }
+            count++;
+            pendingResults.add(result);
+        }
+
+        void finishPending() {
+            for (BroadcastReceiver.PendingResult result : pendingResults) {
+                result.finish();
+            }
+            pendingResults.clear();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.parse.anydevice.app;
+
+import android.content.Intent;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.parse.ParsePushBroadcastReceiver;
+import com.parse.anydevice.models.Event;
+import com.parse.anydevice.models.Installation;
+import com.parse.anydevice.models.UserSession;
+import com.parse.anydevice.util.PushData;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Date;
+
+/**
+ * Immutable, typed form of a push sent by the cloud code.
+ * <p/>
+ * The JSON is decoded once into {@link PushData} with a streaming reader when the push arrives (see
+ * {@link PushReceiver#onPushReceive}). Device events are handed to the {@link DeviceEventBus} as they are,
+ * other pushes are passed on as a Parcelable extra, so receivers never build org.json trees for it.
+ * Event fields are only present for {@link Constants#EVENT_INTENT_ACTION} pushes.
+ */
+public final class PushPayload implements Parcelable {
+    private static final String TAG = PushPayload.class.getSimpleName();
+    private static final String EXTRA_PAYLOAD = "com.parse.anydevice.PUSH_PAYLOAD";
+    private static final long NO_DATE = PushData.NO_DATE;
+
+    private final String action;
+    private final String userSessionId;
+    private final String installationId;
+    private final String alert;
+    private final String eventObjectId;
+    private final String eventInstallationId;
+    private final String eventValue;
+    private final long eventCreatedAt;
+
+    private PushPayload(final String action, final String userSessionId, final String installationId, final String alert,
+                        final String eventObjectId, final String eventInstallationId, final String eventValue, final long eventCreatedAt) {
+        this.action = action;
+        this.userSessionId = userSessionId;
+        this.installationId = installationId;
+        this.alert = alert;
+        this.eventObjectId = eventObjectId;
+        this.eventInstallationId = eventInstallationId;
+        this.eventValue = eventValue;
+        this.eventCreatedAt = eventCreatedAt;
+    }
+
+    /**
+     * Get the payload attached to a push intent, decoding the raw push data only if nobody did so yet
+     *
+     * @param intent Intent carrying {@link ParsePushBroadcastReceiver#KEY_PUSH_DATA}
+     * @return The payload, or null if the push data is missing or malformed
+     */
+    @Nullable
+    public static PushPayload fromIntent(@NonNull final Intent intent) {
+        final PushPayload payload = intent.getParcelableExtra(EXTRA_PAYLOAD);
+        if (payload != null) {
+            return payload;
+        }
+        final String data = intent.getStringExtra(ParsePushBroadcastReceiver.KEY_PUSH_DATA);
+        return data == null ? null : decode(data);
+    }
+
+    /**
+     * Attach the payload to an intent so that its receivers don't decode it again
+     *
+     * @param intent Intent to broadcast
+     */
+    public void writeToIntent(@NonNull final Intent intent) {
+        intent.putExtra(EXTRA_PAYLOAD, this);
+    }
+
+    /**
+     * Decode the push data in a single pass, see {@link PushData}
+     *
+     * @param json The push data as sent by the cloud code
+     * @return The payload, or null if the JSON is malformed
+     */
+    @Nullable
+    public static PushPayload decode(@NonNull final String json) {
+        try {
+            final PushData data = PushData.decode(json);
+            return new PushPayload(data.getAction(), data.getUserSessionId(), data.getInstallationId(), data.getAlert(),
+                    data.getEventObjectId(), data.getEventInstallationId(), data.getEventValue(), data.getEventCreatedAt());
+        } catch (IOException | IllegalStateException | ParseException e) {
+            Log.e(TAG, "Failed to decode push data", e);
+            return null;
+        }
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    /**
+     * @return Object id of the device's {@link UserSession}
+     */
+    public String getUserSessionId() {
+        return userSessionId;
+    }
+
+    /**
+     * @return The UUID of the device's {@link Installation}
+     */
+    public String getInstallationId() {
+        return installationId;
+    }
+
+    public String getAlert() {
+        return alert;
+    }
+
+    public boolean hasEvent() {
+        return eventValue != null && eventCreatedAt != NO_DATE;
+    }
+
+    public String getEventObjectId() {
+        return eventObjectId;
+    }
+
+    /**
+     * @return Object id of the {@link Installation} that saved the event
+     */
+    public String getEventInstallationId() {
+        return eventInstallationId;
+    }
+
+    /**
+     * @return The event's value as JSON text
+     */
+    public String getEventValue() {
+        return eventValue;
+    }
+
+    /**
+     * @return Creation time of the event in milliseconds since the epoch
+     */
+    public long getEventCreatedAt() {
+        return eventCreatedAt;
+    }
+
+    /**
+     * Build the {@link Event} carried by the push
+     *
+     * @return The event, or null if the push has none or its value is malformed
+     */
+    @Nullable
+    public Event toEvent() {
+        if (!hasEvent()) {
+            return null;
+        }
+        try {
+            return Event.create(eventObjectId, eventInstallationId, new JSONObject(eventValue), new Date(eventCreatedAt));
+        } catch (JSONException e) {
+            Log.e(TAG, "Malformed event value", e);
+            return null;
+        }
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(final Parcel dest, final int flags) {
+        dest.writeString(action);
+        dest.writeString(userSessionId);
+        dest.writeString(installationId);
+        dest.writeString(alert);
+        dest.writeString(eventObjectId);
+        dest.writeString(eventInstallationId);
+        dest.writeString(eventValue);
+        dest.writeLong(eventCreatedAt);
+    }
+
+    public static final Creator<PushPayload> CREATOR = new Creator<PushPayload>() {
+        @Override
+        public PushPayload createFromParcel(final Parcel source) {
+            return new PushPayload(source.readString(), source.readString(), source.readString(), source.readString(),
+                    source.readString(), source.readString(), source.readString(), source.readLong());
+        }
+
+        @Override
+        public PushPayload[] newArray(final int size) {
+            return new PushPayload[size];
+        }
+    };
+}
@@ -0,0 +1,112 @@
+package com.parse.anydevice.app;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records how long each step of application startup takes.
+ * <p/>
+ * Times are measured from when the tracer is first used, which is the start of
+ * {@link AnydeviceApplication#onCreate()}. Spans also show up as sections in systrace on API 18 and up.
+ * Thread safe.
+ */
+public class StartupTracer {
+    private static final String TAG = StartupTracer.class.getName();
+
+    private static final StartupTracer instance = new StartupTracer();
+
+    private final long origin = SystemClock.elapsedRealtime();
+    private final List<Span> spans = new ArrayList<>();
+
+    private StartupTracer() {}
+
+    public static StartupTracer getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start timing a step; end it on the same thread
+     *
+     * @param name Name of the step
+     * @return The running span
+     */
+    @NonNull
+    public Span begin(@NonNull final String name) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(name);
+        }
+        return new Span(name, SystemClock.elapsedRealtime() - origin);
+    }
+
+    /**
+     * Record a point in time, e.g. the first frame, as a span without duration
+     *
+     * @param name Name of the point
+     */
+    public void mark(@NonNull final String name) {
+        add(new Span(name, SystemClock.elapsedRealtime() - origin));
+    }
+
+    /**
+     * @return The finished spans in order of completion
+     */
+    @NonNull
+    public synchronized List<Span> getSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    /**
+     * Log every finished span
+     */
+    public void dump() {
+        for (Span span : getSpans()) {
+            Log.d(TAG, String.format("%-28s start %5d ms, took %4d ms on %s",
+                    span.name, span.start, span.duration, span.thread));
+        }
+    }
+
+    private synchronized void add(final Span span) {
+        spans.add(span);
+    }
+
+    public class Span {
+        private final String name;
+        private final String thread = Thread.currentThread().getName();
+        private final long start;
+        private long duration;
+
+        private Span(final String name, final long start) {
+            this.name = name;
+            this.start = start;
+        }
+
+        public void end() {
+            duration = SystemClock.elapsedRealtime() - origin - start;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                Trace.endSection();
+            }
+            add(this);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return Milliseconds since startup began
+         */
+        public long getStart() {
+            return start;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+    }
+}
@@ -0,0 +1,527 @@
+package com.parse.anydevice.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.parse.FindCallback;
+import com.parse.GetCallback;
+import com.parse.ParseException;
+import com.parse.ParseObject;
+import com.parse.anydevice.models.Installation;
+import com.parse.anydevice.models.Model;
+import com.parse.anydevice.models.UserSession;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-device copy of the current user's devices, backed by the Parse local datastore.
+ * <p/>
+ * Device {@link Installation}s (with their {@link Model} and latest event), {@link UserSession}s and
+ * {@link Model}s are pinned locally so that screens can render without waiting for the network.
+ * {@link #sync()} brings the local copy up to date in the background, only asking the server for objects
+ * updated since the last sync of their class. Once a day everything is fetched again so that devices
+ * removed from another phone disappear as well. Installations and models are fetched with only the keys the
+ * screens declare in their projections; pinned objects are shared by all screens, so they get the union.
+ * <p/>
+ * Loaded installations and sessions are handed to the {@link DeviceStateStore}, which answers later lookups from memory.
+ * Lookups answered from memory and every query are recorded in {@link QueryMetrics}.
+ * All methods must be called, and all callbacks are delivered, on the main thread.
+ */
+public class DeviceRepository {
+    private static final String TAG = DeviceRepository.class.getSimpleName();
+    public static final String PIN_INSTALLATIONS = "installations";
+    private static final String PIN_SESSIONS = "sessions";
+    private static final String PIN_MODELS = "models";
+    private static final String PREFERENCES_NAME = "device_repository";
+    private static final String UPDATED_AT = "updatedAt";
+    private static final String QUERY_INSTALLATION = "installation";
+    private static final String QUERY_SESSION = "session";
+    private static final String QUERY_MODELS = "models";
+    private static final String LOCAL = ":local";
+    private static final String LAST_FULL_SYNC = "lastFullSync";
+    private static final int SYNC_PAGE_SIZE = 1000;
+    // Installation UUIDs per containedIn query, keeping the request URL short
+    private static final int CONTAINED_IN_SIZE = 100;
+    private static final String OBJECT_ID = "objectId";
+    private static final long FULL_SYNC_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+    private static DeviceRepository instance;
+
+    public interface Listener {
+        /**
+         * Called after a sync changed the local copy
+         */
+        void onDevicesChanged();
+    }
+
+    private interface QueryFactory<T extends ParseObject> {
+        QuerySpec<T> create();
+    }
+
+    private final SharedPreferences preferences;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final DeviceStateStore store = DeviceStateStore.getInstance();
+    private final List<Listener> listeners = new ArrayList<>();
+    private List<Model> models;
+    private boolean isSyncing, isSyncPending;
+
+    private DeviceRepository(@NonNull final Context context) {
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Create the repository. Requires the Parse local datastore to be enabled.
+     *
+     * @param context Any context, only the application context is kept
+     */
+    public static void initialize(@NonNull final Context context) {
+        instance = new DeviceRepository(context.getApplicationContext());
+    }
+
+    public static DeviceRepository getInstance() {
+        return instance;
+    }
+
+    /**
+     * Local query for the pinned device {@link Installation}s, including their model and latest event
+     *
+     * @return Query to be refined by the caller
+     */
+    public static QuerySpec<Installation> createLocalInstallationQuery() {
+        return new QuerySpec<>(Installation.class)
+                .setName(QUERY_INSTALLATION + LOCAL)
+                .fromPin(PIN_INSTALLATIONS)
+                .include(Installation.MODEL)
+                .include(Installation.LATEST_EVENT);
+    }
+
+    public void addListener(@NonNull final Listener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(@NonNull final Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param installationId The UUID of the {@link Installation}
+     * @return The installation in the {@link DeviceStateStore}, or null if it has to be looked up
+     */
+    public Installation peekInstallation(@NonNull final String installationId) {
+        final Installation installation = store.getInstallation(installationId);
+        if (installation != null) {
+            QueryMetrics.getInstance().recordHit(QUERY_INSTALLATION, QueryMetrics.Source.MEMORY);
+        }
+        return installation;
+    }
+
+    /**
+     * @param installationId The UUID of the {@link Installation} the session belongs to
+     * @return The session in the {@link DeviceStateStore}, or null if it has to be looked up
+     */
+    public UserSession peekUserSession(@NonNull final String installationId) {
+        final UserSession userSession = store.getUserSession(installationId);
+        if (userSession != null) {
+            QueryMetrics.getInstance().recordHit(QUERY_SESSION, QueryMetrics.Source.MEMORY);
+        }
+        return userSession;
+    }
+
+    /**
+     * Start looking up the session of a device that is about to be opened, so that the details screen can
+     * usually render from memory. Its installation is normally in the {@link DeviceStateStore} already.
+     *
+     * @param installationId The UUID of the device's {@link Installation}
+     */
+    public void prefetch(@NonNull final String installationId) {
+        if (store.getUserSession(installationId) == null) {
+            getUserSession(installationId, new GetCallback<UserSession>() {
+                @Override
+                public void done(final UserSession userSession, final ParseException e) {
+                    if (e != null) {
+                        Log.w(TAG, "Failed to prefetch session", e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Look up a device installation locally, only going to the server if it was never synced
+     *
+     * @param installationId The UUID of the {@link Installation}
+     * @param callback       Called once with the installation or the error
+     */
+    public void getInstallation(@NonNull final String installationId, @NonNull final GetCallback<Installation> callback) {
+        final Installation indexed = peekInstallation(installationId);
+        if (indexed != null) {
+            deliver(callback, indexed);
+            return;
+        }
+        final QuerySpec<Installation> localQuery = createLocalInstallationQuery()
+                .whereEqualTo(Installation.INSTALLATION_ID, installationId);
+        QueryExecutor.getFirst(localQuery, new GetCallback<Installation>() {
+            @Override
+            public void done(final Installation installation, final ParseException e) {
+                if (e == null) {
+                    store.putInstallation(installation);
+                    callback.done(installation, null);
+                    return;
+                }
+                final QuerySpec<Installation> query = Installation.getDeviceQuery()
+                        .setName(QUERY_INSTALLATION)
+                        .whereEqualTo(Installation.INSTALLATION_ID, installationId);
+                QueryExecutor.getFirst(query, new GetCallback<Installation>() {
+                    @Override
+                    public void done(final Installation installation, final ParseException e) {
+                        if (e == null) {
+                            installation.pinInBackground(PIN_INSTALLATIONS);
+                            store.putInstallation(installation);
+                        }
+                        callback.done(installation, e);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Look up the session of a device locally, only going to the server if it was never synced
+     *
+     * @param installationId The UUID of the {@link Installation} the session belongs to
+     * @param callback       Called once with the session or the error
+     */
+    public void getUserSession(@NonNull final String installationId, @NonNull final GetCallback<UserSession> callback) {
+        final UserSession indexed = peekUserSession(installationId);
+        if (indexed != null) {
+            deliver(callback, indexed);
+            return;
+        }
+        final QuerySpec<UserSession> localQuery = new QuerySpec<>(UserSession.class)
+                .setName(QUERY_SESSION + LOCAL)
+                .fromPin(PIN_SESSIONS)
+                .whereEqualTo(UserSession.INSTALLATION_ID, installationId);
+        QueryExecutor.getFirst(localQuery, new GetCallback<UserSession>() {
+            @Override
+            public void done(final UserSession userSession, final ParseException e) {
+                if (e == null) {
+                    store.putUserSession(installationId, userSession);
+                    callback.done(userSession, null);
+                    return;
+                }
+                final QuerySpec<UserSession> query = new QuerySpec<>(UserSession.class)
+                        .setName(QUERY_SESSION)
+                        .whereEqualTo(UserSession.INSTALLATION_ID, installationId);
+                QueryExecutor.getFirst(query, new GetCallback<UserSession>() {
+                    @Override
+                    public void done(final UserSession userSession, final ParseException e) {
+                        if (e == null) {
+                            userSession.pinInBackground(PIN_SESSIONS);
+                            store.putUserSession(installationId, userSession);
+                        }
+                        callback.done(userSession, e);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Get the board {@link Model}s from memory, the local datastore or, the first time, from the server
+     *
+     * @param callback Called once with the models or the error
+     */
+    public void getModels(@NonNull final FindCallback<Model> callback) {
+        if (models != null) {
+            QueryMetrics.getInstance().recordHit(QUERY_MODELS, QueryMetrics.Source.MEMORY);
+            deliver(callback, models);
+            return;
+        }
+        QueryExecutor.find(Model.getQuery().setName(QUERY_MODELS + LOCAL).fromPin(PIN_MODELS), new FindCallback<Model>() {
+            @Override
+            public void done(final List<Model> localModels, final ParseException e) {
+                if (e == null && !localModels.isEmpty()) {
+                    models = localModels;
+                    callback.done(localModels, null);
+                    return;
+                }
+                QueryExecutor.find(Model.getQuery(), new FindCallback<Model>() {
+                    @Override
+                    public void done(final List<Model> remoteModels, final ParseException e) {
+                        if (e == null) {
+                            ParseObject.pinAllInBackground(PIN_MODELS, remoteModels);
+                            models = remoteModels;
+                        }
+                        callback.done(remoteModels, e);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Forget a device locally, e.g. once its session has been deleted
+     *
+     * @param installationId The UUID of the device's {@link Installation}
+     */
+    public void removeDevice(@NonNull final String installationId) {
+        final Installation installation = store.getInstallation(installationId);
+        if (installation != null) {
+            installation.unpinInBackground(PIN_INSTALLATIONS);
+        }
+        final UserSession userSession = store.getUserSession(installationId);
+        if (userSession != null) {
+            userSession.unpinInBackground(PIN_SESSIONS);
+        }
+        store.remove(installationId);
+        notifyListeners();
+    }
+
+    /**
+     * Pull everything that changed on the server since the last sync into the local datastore.
+     * If a sync is already running another one is done once it finishes.
+     */
+    public void sync() {
+        if (isSyncing) {
+            isSyncPending = true;
+            return;
+        }
+        isSyncing = true;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long now = System.currentTimeMillis();
+                final boolean isFullSync = now - preferences.getLong(LAST_FULL_SYNC, 0) > FULL_SYNC_INTERVAL;
+                int pulled = 0;
+                try {
+                    pulled += pull(PIN_MODELS, isFullSync, new QueryFactory<Model>() {
+                        @Override
+                        public QuerySpec<Model> create() {
+                            return Model.getQuery();
+                        }
+                    }).size();
+                    final List<UserSession> sessions = pull(PIN_SESSIONS, isFullSync, new QueryFactory<UserSession>() {
+                        @Override
+                        public QuerySpec<UserSession> create() {
+                            return new QuerySpec<>(UserSession.class);
+                        }
+                    });
+                    pulled += sessions.size();
+                    final QueryFactory<Installation> installationFactory = new QueryFactory<Installation>() {
+                        @Override
+                        public QuerySpec<Installation> create() {
+                            return Installation.getDeviceQuery()
+                                    .whereMatchesKeyInQuery(Installation.INSTALLATION_ID, UserSession.INSTALLATION_ID, new QuerySpec<>(UserSession.class))
+                                    .whereEqualTo(Installation.DEVICE_TYPE, "embedded")
+                                    .whereExists(Installation.MODEL);
+                        }
+                    };
+                    pulled += pull(PIN_INSTALLATIONS, isFullSync, installationFactory).size();
+                    if (!isFullSync) {
+                        pulled += pullInstallationsOf(sessions, installationFactory);
+                    }
+                    if (isFullSync) {
+                        preferences.edit().putLong(LAST_FULL_SYNC, now).apply();
+                    }
+                } catch (ParseException e) {
+                    Log.w(TAG, "Sync failed, keeping local copy", e);
+                }
+                onSyncFinished(pulled > 0, isFullSync);
+            }
+        });
+    }
+
+    /**
+     * Drop the local copy, e.g. when logging out
+     */
+    public void clear() {
+        store.clear();
+        models = null;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ParseObject.unpinAll(PIN_INSTALLATIONS);
+                    ParseObject.unpinAll(PIN_SESSIONS);
+                    ParseObject.unpinAll(PIN_MODELS);
+                } catch (ParseException e) {
+                    Log.e(TAG, "Failed to clear local datastore", e);
+                }
+                preferences.edit().clear().apply();
+            }
+        });
+    }
+
+    /**
+     * Fetch the objects of one class updated after its watermark, page by page, and pin them.
+     * Pages are cut by an (updatedAt, objectId) cursor, so objects updated at the same moment as the last one
+     * of a full page aren't skipped. A full sync replaces the pinned objects, but only once every page arrived,
+     * so a failed page leaves the previous local copy intact.
+     * Runs on the sync thread; the queries are recorded as "sync:" followed by the pin name.
+     *
+     * @param pinName    Name the objects of this class are pinned with
+     * @param isFullSync If true, ignore the watermark and replace all pinned objects
+     * @param factory    Creates the server query for the class
+     * @return The objects pulled
+     */
+    private <T extends ParseObject> List<T> pull(final String pinName, final boolean isFullSync, final QueryFactory<T> factory) throws ParseException {
+        final String watermarkKey = UPDATED_AT + ":" + pinName;
+        final long watermark = isFullSync ? 0 : preferences.getLong(watermarkKey, 0);
+        final List<T> pulled = new ArrayList<>();
+        final String name = "sync:" + pinName;
+        Date after = watermark > 0 ? new Date(watermark) : null;
+        List<T> page;
+        do {
+            final QuerySpec<T> spec = factory.create();
+            if (after != null) {
+                spec.whereGreaterThan(UPDATED_AT, after);
+            }
+            spec.orderByAscending(UPDATED_AT).addAscendingOrder(OBJECT_ID);
+            page = fetchPage(spec, name);
+            final List<T> objects = new ArrayList<>(page);
+            if (!page.isEmpty()) {
+                final T last = page.get(page.size() - 1);
+                after = last.getUpdatedAt();
+                if (page.size() == SYNC_PAGE_SIZE) {
+                    objects.addAll(pullUpdatedAt(factory, name, after, last.getObjectId()));
+                }
+            }
+            if (!isFullSync) {
+                ParseObject.pinAll(pinName, objects);
+            }
+            pulled.addAll(objects);
+        } while (page.size() == SYNC_PAGE_SIZE);
+        if (isFullSync) {
+            // Held in memory until the last page arrived, then swapped in
+            ParseObject.unpinAll(pinName);
+            ParseObject.pinAll(pinName, pulled);
+        }
+        if (after != null) {
+            preferences.edit().putLong(watermarkKey, after.getTime()).apply();
+        }
+        return pulled;
+    }
+
+    /**
+     * Fetch the objects updated at exactly the given time that come after the given object id, i.e. those
+     * that didn't fit into a full page
+     *
+     * @return The objects, not pinned yet
+     */
+    private <T extends ParseObject> List<T> pullUpdatedAt(final QueryFactory<T> factory, final String name, final Date updatedAt,
+                                                          final String afterObjectId) throws ParseException {
+        final List<T> pulled = new ArrayList<>();
+        String cursor = afterObjectId;
+        List<T> page;
+        do {
+            final QuerySpec<T> spec = factory.create()
+                    .whereEqualTo(UPDATED_AT, updatedAt)
+                    .whereGreaterThan(OBJECT_ID, cursor)
+                    .orderByAscending(OBJECT_ID);
+            page = fetchPage(spec, name);
+            pulled.addAll(page);
+            if (!page.isEmpty()) {
+                cursor = page.get(page.size() - 1).getObjectId();
+            }
+        } while (page.size() == SYNC_PAGE_SIZE);
+        return pulled;
+    }
+
+    /**
+     * Pull the installations of sessions that changed since the last sync. A board claimed just now can have an
+     * installation older than the installations' watermark, which the incremental pull would never match.
+     *
+     * @param sessions Sessions pulled by this sync
+     * @param factory  Creates the server query for installations
+     * @return Number of installations pulled
+     */
+    private int pullInstallationsOf(final List<UserSession> sessions, final QueryFactory<Installation> factory) throws ParseException {
+        final List<String> installationIds = new ArrayList<>(sessions.size());
+        for (UserSession session : sessions) {
+            installationIds.add(session.getString(UserSession.INSTALLATION_ID));
+        }
+        int pulled = 0;
+        for (int i = 0; i < installationIds.size(); i += CONTAINED_IN_SIZE) {
+            final List<String> batch = installationIds.subList(i, Math.min(installationIds.size(), i + CONTAINED_IN_SIZE));
+            final List<Installation> page = fetchPage(factory.create().whereContainedIn(Installation.INSTALLATION_ID, batch),
+                    "sync:" + PIN_INSTALLATIONS + ":sessions");
+            ParseObject.pinAll(PIN_INSTALLATIONS, page);
+            pulled += page.size();
+        }
+        return pulled;
+    }
+
+    /**
+     * Run one page of a sync query on the sync thread, recording it in {@link QueryMetrics}
+     */
+    private static <T extends ParseObject> List<T> fetchPage(final QuerySpec<T> spec, final String name) throws ParseException {
+        spec.setLimit(SYNC_PAGE_SIZE).setName(name);
+        final QueryMetrics.Timer timer = QueryMetrics.getInstance().startInBackground(spec);
+        final List<T> page;
+        try {
+            page = spec.getQuery().find();
+        } catch (ParseException e) {
+            timer.stop(0, e);
+            throw e;
+        }
+        timer.stop(page.size(), null);
+        return page;
+    }
+
+    private void onSyncFinished(final boolean hasChanges, final boolean isFullSync) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                isSyncing = false;
+                if (isFullSync) {
+                    // Removed devices may still be stored; pinned objects are shared so others stay current
+                    store.forgetObjects();
+                }
+                if (hasChanges) {
+                    models = null;
+                    notifyListeners();
+                }
+                if (isSyncPending) {
+                    isSyncPending = false;
+                    sync();
+                }
+            }
+        });
+    }
+
+    private void notifyListeners() {
+        for (Listener listener : new ArrayList<>(listeners)) {
+            listener.onDevicesChanged();
+        }
+    }
+
+    private <T extends ParseObject> void deliver(final GetCallback<T> callback, final T object) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.done(object, null);
+            }
+        });
+    }
+
+    private <T extends ParseObject> void deliver(final FindCallback<T> callback, final List<T> objects) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.done(objects, null);
+            }
+        });
+    }
+}
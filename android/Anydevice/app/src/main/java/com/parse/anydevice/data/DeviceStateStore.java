@@ -0,0 +1,257 @@
+package com.parse.anydevice.data;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.parse.anydevice.models.Event;
+import com.parse.anydevice.models.Installation;
+import com.parse.anydevice.models.UserSession;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The app's in-memory state of every device it has seen, keyed by installationId.
+ * <p/>
+ * Screens read installations, sessions and latest events from here instead of keeping their own copies,
+ * so there is one instance of each per device. Events are applied by createdAt: an event that is not newer
+ * than the device's latest one, e.g. a duplicate push or a replay, is dropped.
+ * <p/>
+ * The latest event is only kept here, never put into the installation: the installations are pinned, and
+ * Parse would pin that unsaved change with them and lay it over every newer latestEvent that sync brings.
+ * <p/>
+ * Observers are told which devices changed. Changes are collected by a {@link FrameCoalescer} and delivered
+ * once per display frame, so a burst of events causes a single callback with each device in it once.
+ * Recently used devices are kept, up to {@link #MAX_DEVICES}. Must be used from the main thread.
+ */
+public class DeviceStateStore {
+    private static final String TAG = DeviceStateStore.class.getSimpleName();
+    private static final int MAX_DEVICES = 256;
+
+    private static final DeviceStateStore instance = new DeviceStateStore();
+
+    public interface Observer {
+        /**
+         * @param installationIds UUIDs of the observed devices that changed
+         */
+        void onDevicesChanged(@NonNull final Set<String> installationIds);
+    }
+
+    private final LruCache<String, DeviceState> devices = new LruCache<>(MAX_DEVICES);
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private final FrameCoalescer coalescer = new FrameCoalescer(new FrameCoalescer.Callback() {
+        @Override
+        public void onFrame(@NonNull final Set<String> installationIds, final int merged) {
+            if (merged > 0) {
+                Log.d(TAG, "Merged " + merged + " changes into " + installationIds.size() + " devices this frame");
+            }
+            dispatch(installationIds);
+        }
+    });
+    private int droppedEvents;
+
+    private DeviceStateStore() {}
+
+    public static DeviceStateStore getInstance() {
+        return instance;
+    }
+
+    /**
+     * Observe changes of one device or of all of them
+     *
+     * @param installationId The UUID of the device's {@link Installation}, or null for all devices
+     * @param observer       Receives the changes
+     */
+    public void subscribe(@Nullable final String installationId, @NonNull final Observer observer) {
+        subscriptions.add(new Subscription(installationId, observer));
+    }
+
+    /**
+     * End every subscription of the observer
+     */
+    public void unsubscribe(@NonNull final Observer observer) {
+        for (int i = subscriptions.size() - 1; i >= 0; i--) {
+            if (subscriptions.get(i).observer == observer) {
+                subscriptions.remove(i);
+            }
+        }
+    }
+
+    @Nullable
+    public Installation getInstallation(@NonNull final String installationId) {
+        final DeviceState state = devices.get(installationId);
+        return state == null ? null : state.installation;
+    }
+
+    @Nullable
+    public UserSession getUserSession(@NonNull final String installationId) {
+        final DeviceState state = devices.get(installationId);
+        return state == null ? null : state.userSession;
+    }
+
+    /**
+     * @return The newest event of the device, from a push or its installation, or null
+     */
+    @Nullable
+    public Event getLatestEvent(@NonNull final String installationId) {
+        final DeviceState state = devices.get(installationId);
+        if (state == null) {
+            return null;
+        }
+        takeLoadedEvent(state);
+        return state.latestEvent;
+    }
+
+    /**
+     * Keep a freshly loaded installation. Its latest event is taken unless a newer one was received meanwhile.
+     * Observers aren't notified, as whoever loaded it is showing it already.
+     *
+     * @param installation A device {@link Installation}
+     */
+    public void putInstallation(@NonNull final Installation installation) {
+        final DeviceState state = getOrCreate(installation.getInstallationId());
+        state.installation = installation;
+        takeLoadedEvent(state);
+    }
+
+    /**
+     * @param installations Device {@link Installation}s, see {@link #putInstallation(Installation)}
+     */
+    public void putInstallations(@NonNull final List<Installation> installations) {
+        for (Installation installation : installations) {
+            putInstallation(installation);
+        }
+    }
+
+    /**
+     * @param installationId The UUID of the device's {@link Installation}
+     * @param userSession    The device's {@link UserSession}
+     */
+    public void putUserSession(@NonNull final String installationId, @NonNull final UserSession userSession) {
+        getOrCreate(installationId).userSession = userSession;
+    }
+
+    /**
+     * Apply an event a device sent, unless it isn't newer than the one the store has
+     *
+     * @param installationId The UUID of the device's {@link Installation}
+     * @param event          The {@link Event}, with its createdAt
+     * @return true if the event was new and observers will be notified
+     */
+    public boolean applyEvent(@NonNull final String installationId, @NonNull final Event event) {
+        if (event.getCreatedAt() == null) {
+            return false;
+        }
+        final DeviceState state = getOrCreate(installationId);
+        takeLoadedEvent(state);
+        if (state.latestEvent != null && !isNewer(event, state.latestEvent)) {
+            droppedEvents++;
+            Log.d(TAG, "Dropped event that isn't newer, " + droppedEvents + " so far");
+            return false;
+        }
+        state.latestEvent = event;
+        coalescer.post(installationId);
+        return true;
+    }
+
+    /**
+     * Forget a device, e.g. when it was removed
+     *
+     * @param installationId The UUID of the device's {@link Installation}
+     */
+    public void remove(@NonNull final String installationId) {
+        if (devices.remove(installationId) != null) {
+            coalescer.post(installationId);
+        }
+    }
+
+    /**
+     * Forget the installations and sessions so that they are looked up again, e.g. after devices were removed elsewhere.
+     * Latest events are kept, so that replays are still recognized.
+     */
+    public void forgetObjects() {
+        for (DeviceState state : devices.snapshot().values()) {
+            state.installation = null;
+            state.userSession = null;
+        }
+    }
+
+    /**
+     * Forget every device without notifying, e.g. when logging out
+     */
+    public void clear() {
+        devices.evictAll();
+        coalescer.cancel();
+    }
+
+    /**
+     * @return Events dropped because they weren't newer than the device's latest one
+     */
+    public int getDroppedEvents() {
+        return droppedEvents;
+    }
+
+    /**
+     * @return Changes that didn't cost an update of their own, as another change of the same device was
+     *         delivered in the same frame
+     */
+    public int getMergedChanges() {
+        return coalescer.getMerged();
+    }
+
+    private DeviceState getOrCreate(final String installationId) {
+        DeviceState state = devices.get(installationId);
+        if (state == null) {
+            state = new DeviceState();
+            devices.put(installationId, state);
+        }
+        return state;
+    }
+
+    /**
+     * Take the installation's latest event if it is newer, e.g. because sync merged a newer one into it
+     */
+    private static void takeLoadedEvent(final DeviceState state) {
+        final Event loadedEvent = state.installation == null ? null : state.installation.getLatestEvent();
+        if (loadedEvent != null && loadedEvent.getCreatedAt() != null && isNewer(loadedEvent, state.latestEvent)) {
+            state.latestEvent = loadedEvent;
+        }
+    }
+
+    private void dispatch(final Set<String> batch) {
+        for (Subscription subscription : new ArrayList<>(subscriptions)) {
+            if (!subscriptions.contains(subscription)) {
+                continue;
+            }
+            if (subscription.installationId == null) {
+                subscription.observer.onDevicesChanged(batch);
+            } else if (batch.contains(subscription.installationId)) {
+                subscription.observer.onDevicesChanged(Collections.singleton(subscription.installationId));
+            }
+        }
+    }
+
+    private static boolean isNewer(final Event event, final Event other) {
+        return other == null || other.getCreatedAt() == null || event.getCreatedAt().after(other.getCreatedAt());
+    }
+
+    private static class DeviceState {
+        Installation installation;
+        UserSession userSession;
+        Event latestEvent;
+    }
+
+    private static class Subscription {
+        final String installationId;
+        final Observer observer;
+
+        Subscription(final String installationId, final Observer observer) {
+            this.installationId = installationId;
+            this.observer = observer;
+        }
+    }
+}
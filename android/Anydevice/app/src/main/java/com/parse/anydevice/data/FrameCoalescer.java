@@ -0,0 +1,111 @@
+package com.parse.anydevice.data;
+
+import android.support.annotation.NonNull;
+import android.view.Choreographer;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Buffers changes and hands them on once per display frame.
+ * <p/>
+ * Every change is posted with the key of what changed, e.g. an installationId. The first change after a frame
+ * schedules a {@link Choreographer} frame callback, which receives each changed key once however often it was
+ * posted, along with how many changes were merged into others. That way a burst of device events costs one
+ * UI update per frame rather than one per event.
+ * Must be used from the main thread.
+ */
+public class FrameCoalescer {
+    public interface Callback {
+        /**
+         * Called at the start of a frame in which changes are pending
+         *
+         * @param keys   Keys posted since the previous frame, in the order they were first posted
+         * @param merged Number of posts that were merged into an earlier one for the same key
+         */
+        void onFrame(@NonNull final Set<String> keys, final int merged);
+    }
+
+    private final Callback callback;
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(final long frameTimeNanos) {
+            dispatch();
+        }
+    };
+    private Set<String> pending = new LinkedHashSet<>();
+    private int pendingPosts;
+    private int frames, posts, merged, maxMerged;
+
+    /**
+     * @param callback Receives the changes of each frame
+     */
+    public FrameCoalescer(@NonNull final Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * Buffer a change until the next frame
+     *
+     * @param key What changed
+     */
+    public void post(@NonNull final String key) {
+        if (pendingPosts == 0) {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+        pending.add(key);
+        pendingPosts++;
+        posts++;
+    }
+
+    /**
+     * Drop the buffered changes without handing them on
+     */
+    public void cancel() {
+        if (pendingPosts > 0) {
+            Choreographer.getInstance().removeFrameCallback(frameCallback);
+        }
+        pending.clear();
+        pendingPosts = 0;
+    }
+
+    /**
+     * @return Frames in which changes were handed on
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return Changes posted in total
+     */
+    public int getPosts() {
+        return posts;
+    }
+
+    /**
+     * @return Changes merged into an earlier one of the same frame in total
+     */
+    public int getMerged() {
+        return merged;
+    }
+
+    /**
+     * @return Most changes merged in a single frame
+     */
+    public int getMaxMerged() {
+        return maxMerged;
+    }
+
+    private void dispatch() {
+        final Set<String> keys = pending;
+        final int frameMerged = pendingPosts - keys.size();
+        pending = new LinkedHashSet<>();
+        pendingPosts = 0;
+        frames++;
+        merged += frameMerged;
+        maxMerged = Math.max(maxMerged, frameMerged);
+        callback.onFrame(Collections.unmodifiableSet(keys), frameMerged);
+    }
+}
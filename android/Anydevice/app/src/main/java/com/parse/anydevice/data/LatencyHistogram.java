@@ -0,0 +1,84 @@
+package com.parse.anydevice.data;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Counts latencies in buckets whose upper bounds double from 1 ms to {@link #MAX_BOUND} ms, so that
+ * percentiles can be estimated from a fixed amount of memory.
+ * Not thread safe.
+ */
+public class LatencyHistogram {
+    private static final long MAX_BOUND = 16384;
+    // Upper bounds 1, 2, 4, ..., MAX_BOUND ms plus one bucket for anything slower
+    private static final int BUCKETS = Long.numberOfTrailingZeros(MAX_BOUND) + 2;
+
+    private final int[] counts = new int[BUCKETS];
+    private int count;
+    private long totalMillis;
+
+    public LatencyHistogram() {}
+
+    public LatencyHistogram(@NonNull final LatencyHistogram other) {
+        System.arraycopy(other.counts, 0, counts, 0, BUCKETS);
+        count = other.count;
+        totalMillis = other.totalMillis;
+    }
+
+    public void record(final long millis) {
+        counts[bucketOf(millis)]++;
+        count++;
+        totalMillis += millis;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return Mean of the recorded latencies, 0 if there are none
+     */
+    public long getMean() {
+        return count == 0 ? 0 : totalMillis / count;
+    }
+
+    /**
+     * Estimate a percentile as the upper bound of the bucket it falls into
+     *
+     * @param fraction Between 0 and 1, e.g. 0.9 for the 90th percentile
+     * @return Upper bound in milliseconds, {@link Long#MAX_VALUE} if beyond the largest bucket, 0 if empty
+     */
+    public long getPercentile(final double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        final int rank = Math.max(1, (int) Math.ceil(fraction * count));
+        int seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return 1L << i;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + count + " mean=" + getMean() + "ms p50<=" + format(getPercentile(0.5))
+                + " p90<=" + format(getPercentile(0.9)) + " p99<=" + format(getPercentile(0.99));
+    }
+
+    private static String format(final long bound) {
+        return bound == Long.MAX_VALUE ? ">" + MAX_BOUND + "ms" : bound + "ms";
+    }
+
+    private static int bucketOf(final long millis) {
+        if (millis <= 1) {
+            return 0;
+        } else if (millis > MAX_BOUND) {
+            return BUCKETS - 1;
+        }
+        // Smallest i with 2^i >= millis
+        return 64 - Long.numberOfLeadingZeros(millis - 1);
+    }
+}
@@ -0,0 +1,718 @@
+package com.parse.anydevice.data;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.parse.ParseACL;
+import com.parse.ParseException;
+import com.parse.ParseInstallation;
+import com.parse.ParseObject;
+import com.parse.ParseUser;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable queue for the writes the app makes to Parse.
+ * <p/>
+ * Saves and deletes are written to a file as they are queued and sent to the server in order, batched with
+ * {@link ParseObject#saveAll(List)} and {@link ParseObject#deleteAll(List)}, so they survive both the
+ * process being killed and the phone being on a board's access point, which has no internet. A write
+ * supersedes a pending one with the same key: saves of one object are merged, a delete replaces them and
+ * e.g. a newer message to a device replaces an unsent older one.
+ * <p/>
+ * While writes are pending and the server can't be reached the outbox retries with exponential backoff and
+ * whenever connectivity changes. Writes the server rejects are dropped and counted as failed. Each save of a
+ * batch is checked on its own, so saves that went through before a batch failed aren't sent again, and a new
+ * object keeps the objectId it was given, which is also handed back to the instance that was enqueued.
+ * Pending writes, their age and how many were coalesced are tracked so that a growing backlog shows up.
+ * Must be used from the main thread. The file and the network each have a background thread of their own,
+ * so a write is persisted right away even while a batch hangs on an unreachable server.
+ */
+public class Outbox {
+    private static final String TAG = Outbox.class.getSimpleName();
+    private static final String FILE_NAME = "outbox.json";
+    private static final String SAVE = "save";
+    private static final String DELETE = "delete";
+    private static final String POINTER = "Pointer";
+    private static final int BATCH_SIZE = 50;
+    private static final int HIGH_WATERMARK = 100;
+    private static final long MIN_RETRY_DELAY = TimeUnit.SECONDS.toMillis(5);
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Server PARSE = new Server() {
+        @Override
+        public void saveAll(@NonNull final List<ParseObject> objects) throws ParseException {
+            ParseObject.saveAll(objects);
+        }
+
+        @Override
+        public void deleteAll(@NonNull final List<ParseObject> objects) throws ParseException {
+            ParseObject.deleteAll(objects);
+        }
+    };
+
+    private static Outbox instance;
+
+    public interface Listener {
+        /**
+         * Called on the main thread once a save reached the server
+         *
+         * @param object The object that was saved, not necessarily the instance that was enqueued
+         */
+        void onSaved(@NonNull final ParseObject object);
+    }
+
+    /**
+     * Where batches are written, replaced by a fake one in tests
+     */
+    interface Server {
+        void saveAll(@NonNull final List<ParseObject> objects) throws ParseException;
+
+        void deleteAll(@NonNull final List<ParseObject> objects) throws ParseException;
+    }
+
+    private final Context context;
+    private final Server server;
+    private final File file;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // Sends batches; may block for a network timeout
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Reads and writes the file, in the order of the snapshots
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    private final List<Entry> entries = new ArrayList<>();
+    private final List<Listener> listeners = new ArrayList<>();
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    private final BroadcastReceiver connectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(final Context context, final Intent intent) {
+            final NetworkInfo network = ((ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE)).getActiveNetworkInfo();
+            if (network != null && network.isConnected()) {
+                handler.removeCallbacks(flushRunnable);
+                flush();
+            }
+        }
+    };
+    private List<Entry> inFlight;
+    private long retryDelay = MIN_RETRY_DELAY;
+    private boolean isLoaded, isReceiverRegistered;
+    private int peakPending, coalesced, flushed, failed;
+
+    private Outbox(@NonNull final Context context, @NonNull final Server server) {
+        this.context = context;
+        this.server = server;
+        file = new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Create the outbox and start sending the writes left over from the last run
+     *
+     * @param context Any context, only the application context is kept
+     */
+    public static void initialize(@NonNull final Context context) {
+        instance = new Outbox(context.getApplicationContext(), PARSE);
+        instance.load();
+    }
+
+    public static Outbox getInstance() {
+        return instance;
+    }
+
+    public void addListener(@NonNull final Listener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(@NonNull final Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Queue a save of some fields of an object. The values are copied, later changes to the object aren't saved.
+     * Supported values are strings, numbers, booleans, JSON and saved objects; an ACL is kept if it gives only
+     * the current user access.
+     *
+     * @param object      The object to save; the phone's {@link ParseInstallation} is saved as the current one
+     * @param coalesceKey Key under which a newer save replaces this one while pending, or null to merge with
+     *                    pending saves of the same object
+     * @param keys        The fields to save
+     */
+    public void enqueueSave(@NonNull final ParseObject object, final String coalesceKey, @NonNull final String... keys) {
+        final Entry entry = new Entry(SAVE, object.getClassName(), object.getObjectId(), System.currentTimeMillis());
+        entry.isCurrentInstallation = isCurrentInstallation(object);
+        entry.key = coalesceKey != null ? coalesceKey : entry.getObjectKey();
+        entry.aclUserId = getOwnerOnlyAcl(object);
+        if (object.getObjectId() == null) {
+            entry.sources.add(object);
+        }
+        for (String key : keys) {
+            try {
+                entry.fields.put(key, encode(object.get(key)));
+            } catch (JSONException | IllegalArgumentException e) {
+                Log.e(TAG, "Can't queue " + object.getClassName() + "." + key, e);
+            }
+        }
+        add(entry);
+    }
+
+    /**
+     * Queue the deletion of an object, replacing any pending save of it
+     *
+     * @param object A saved object
+     */
+    public void enqueueDelete(@NonNull final ParseObject object) {
+        if (object.getObjectId() == null) {
+            Log.w(TAG, "Can't delete an object that was never saved");
+            return;
+        }
+        final Entry entry = new Entry(DELETE, object.getClassName(), object.getObjectId(), System.currentTimeMillis());
+        entry.key = entry.getObjectKey();
+        add(entry);
+    }
+
+    /**
+     * @return Writes not yet acknowledged by the server
+     */
+    public int getPendingCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return Most writes that were pending at once
+     */
+    public int getPeakPendingCount() {
+        return peakPending;
+    }
+
+    /**
+     * @return Milliseconds the oldest pending write has been waiting, 0 if there is none
+     */
+    public long getOldestPendingAge() {
+        return entries.isEmpty() ? 0 : System.currentTimeMillis() - entries.get(0).enqueuedAt;
+    }
+
+    /**
+     * @return Writes merged into or replaced by a later one
+     */
+    public int getCoalescedCount() {
+        return coalesced;
+    }
+
+    /**
+     * @return Writes acknowledged by the server
+     */
+    public int getFlushedCount() {
+        return flushed;
+    }
+
+    /**
+     * @return Writes rejected by the server and dropped
+     */
+    public int getFailedCount() {
+        return failed;
+    }
+
+    private void add(final Entry entry) {
+        if (enqueue(entries, inFlight, entry)) {
+            coalesced++;
+        }
+        peakPending = Math.max(peakPending, entries.size());
+        if (entries.size() == HIGH_WATERMARK) {
+            Log.w(TAG, HIGH_WATERMARK + " writes pending, the oldest for " + getOldestPendingAge() + " ms");
+        }
+        persist();
+        updateReceiver();
+        handler.removeCallbacks(flushRunnable);
+        handler.post(flushRunnable);
+    }
+
+    /**
+     * Add an entry to the pending ones, merging it into a pending one with the same key that isn't being sent
+     *
+     * @param entries  Pending entries in the order they are sent
+     * @param inFlight Entries being sent, or null
+     * @param entry    The new entry
+     * @return true if the entry was merged into or replaced a pending one
+     */
+    static boolean enqueue(@NonNull final List<Entry> entries, final List<Entry> inFlight, @NonNull final Entry entry) {
+        for (Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+            final Entry pending = it.next();
+            if (!pending.key.equals(entry.key) || (inFlight != null && inFlight.contains(pending))) {
+                continue;
+            }
+            if (DELETE.equals(pending.op)) {
+                if (DELETE.equals(entry.op)) {
+                    return true;
+                }
+            } else if (DELETE.equals(entry.op)) {
+                // The delete goes last so that it still follows earlier writes of other objects
+                it.remove();
+                entries.add(entry);
+                return true;
+            } else {
+                // Also a newer object under the same key, e.g. a newer message, replaces the older one's values
+                mergeFields(pending.fields, entry.fields);
+                pending.aclUserId = entry.aclUserId;
+                pending.sources.addAll(entry.sources);
+                return true;
+            }
+        }
+        entries.add(entry);
+        return false;
+    }
+
+    private void flush() {
+        if (!isLoaded || inFlight != null || entries.isEmpty()) {
+            return;
+        }
+        final String op = entries.get(0).op;
+        final List<Entry> batch = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (!entry.op.equals(op) || batch.size() == BATCH_SIZE) {
+                break;
+            }
+            batch.add(entry);
+        }
+        inFlight = batch;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final BatchResult result = send(batch, server);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onBatchSent(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Send a batch, falling back to one write at a time if the server rejects it. The objects are built once, so
+     * a new object saved by the batch is updated rather than created again by the fallback.
+     * Runs on the background thread.
+     *
+     * @param batch  Entries with the same op
+     * @param server Where to write them
+     * @return What became of each entry
+     */
+    static BatchResult send(@NonNull final List<Entry> batch, @NonNull final Server server) {
+        final BatchResult result = new BatchResult();
+        final String op = batch.get(0).op;
+        final List<ParseObject> objects = new ArrayList<>();
+        for (Entry entry : batch) {
+            objects.add(entry.toObject());
+        }
+        try {
+            write(server, op, objects);
+            for (int i = 0; i < batch.size(); i++) {
+                result.onWritten(batch.get(i), objects.get(i));
+            }
+            result.keepObjectIds(batch, objects);
+            return result;
+        } catch (ParseException e) {
+            if (SAVE.equals(op)) {
+                // The batch may have failed part way; saves that went through are done
+                for (int i = 0; i < batch.size(); i++) {
+                    if (!objects.get(i).isDirty()) {
+                        result.onWritten(batch.get(i), objects.get(i));
+                    }
+                }
+            }
+            if (isTransient(e)) {
+                Log.i(TAG, "Server unreachable, " + (batch.size() - result.written.size()) + " writes kept", e);
+                result.isOffline = true;
+                result.keepObjectIds(batch, objects);
+                return result;
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            final Entry entry = batch.get(i);
+            if (result.written.contains(entry)) {
+                continue;
+            }
+            try {
+                write(server, op, Collections.singletonList(objects.get(i)));
+                result.onWritten(entry, objects.get(i));
+            } catch (ParseException e) {
+                if (isTransient(e)) {
+                    result.isOffline = true;
+                    break;
+                } else if (DELETE.equals(op) && e.getCode() == ParseException.OBJECT_NOT_FOUND) {
+                    result.written.add(entry);
+                } else {
+                    Log.e(TAG, "Dropping rejected " + entry.op + " of " + entry.className, e);
+                    result.rejected.add(entry);
+                }
+            }
+        }
+        result.keepObjectIds(batch, objects);
+        return result;
+    }
+
+    private static void write(final Server server, final String op, final List<ParseObject> objects) throws ParseException {
+        if (DELETE.equals(op)) {
+            server.deleteAll(objects);
+        } else {
+            server.saveAll(objects);
+        }
+    }
+
+    private void onBatchSent(final BatchResult result) {
+        inFlight = null;
+        result.applyTo(entries);
+        flushed += result.written.size();
+        failed += result.rejected.size();
+        persist();
+        updateReceiver();
+        for (ParseObject object : result.saved) {
+            for (Listener listener : new ArrayList<>(listeners)) {
+                listener.onSaved(object);
+            }
+        }
+        handler.removeCallbacks(flushRunnable);
+        if (result.isOffline) {
+            handler.postDelayed(flushRunnable, retryDelay);
+            retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+        } else {
+            retryDelay = MIN_RETRY_DELAY;
+            flush();
+        }
+    }
+
+    /**
+     * Only listen for connectivity changes while there is something to send
+     */
+    private void updateReceiver() {
+        if (!entries.isEmpty() && !isReceiverRegistered) {
+            context.registerReceiver(connectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+            isReceiverRegistered = true;
+        } else if (entries.isEmpty() && isReceiverRegistered) {
+            context.unregisterReceiver(connectivityReceiver);
+            isReceiverRegistered = false;
+        }
+    }
+
+    /**
+     * Read the pending writes of the last run in the background; writes queued meanwhile go after them
+     */
+    private void load() {
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Entry> loaded = read();
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        entries.addAll(0, loaded);
+                        isLoaded = true;
+                        if (!loaded.isEmpty()) {
+                            Log.i(TAG, loaded.size() + " writes left over from the last run");
+                            persist();
+                            updateReceiver();
+                        }
+                        flush();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Write a snapshot of the pending writes, replacing the file atomically
+     */
+    private void persist() {
+        if (!isLoaded) {
+            // The file still holds the last run's writes, they are persisted together with these once loaded
+            return;
+        }
+        final JSONArray snapshot = new JSONArray();
+        for (Entry entry : entries) {
+            try {
+                snapshot.put(entry.toJson());
+            } catch (JSONException e) {
+                Log.e(TAG, "Can't persist " + entry.op + " of " + entry.className, e);
+            }
+        }
+        final String json = snapshot.toString();
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final File temp = new File(file.getPath() + ".tmp");
+                try {
+                    final FileOutputStream stream = new FileOutputStream(temp);
+                    final Writer writer = new OutputStreamWriter(stream, "UTF-8");
+                    try {
+                        writer.write(json);
+                        writer.flush();
+                        stream.getFD().sync();
+                    } finally {
+                        writer.close();
+                    }
+                    if (!temp.renameTo(file)) {
+                        throw new IOException("Failed to rename " + temp);
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to persist outbox", e);
+                }
+            }
+        });
+    }
+
+    private List<Entry> read() {
+        final List<Entry> loaded = new ArrayList<>();
+        if (!file.exists()) {
+            return loaded;
+        }
+        try {
+            final Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            final StringBuilder json = new StringBuilder();
+            try {
+                final char[] buffer = new char[4096];
+                int read;
+                while ((read = reader.read(buffer)) != -1) {
+                    json.append(buffer, 0, read);
+                }
+            } finally {
+                reader.close();
+            }
+            final JSONArray array = new JSONArray(json.toString());
+            for (int i = 0; i < array.length(); i++) {
+                loaded.add(Entry.fromJson(array.getJSONObject(i)));
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Failed to read outbox", e);
+        }
+        return loaded;
+    }
+
+    private static boolean isTransient(final ParseException e) {
+        return e.getCode() == ParseException.CONNECTION_FAILED || e.getCode() == ParseException.TIMEOUT
+                || e.getCode() == ParseException.INTERNAL_SERVER_ERROR;
+    }
+
+    /**
+     * @return true if the object is this phone's installation rather than e.g. a board's
+     */
+    private static boolean isCurrentInstallation(final ParseObject object) {
+        if (!(object instanceof ParseInstallation)) {
+            return false;
+        }
+        final ParseInstallation current = ParseInstallation.getCurrentInstallation();
+        return object == current || (current != null && current.getInstallationId() != null
+                && current.getInstallationId().equals(((ParseInstallation) object).getInstallationId()));
+    }
+
+    private static String getOwnerOnlyAcl(final ParseObject object) {
+        final ParseACL acl = object.getACL();
+        final ParseUser user = ParseUser.getCurrentUser();
+        if (acl == null || user == null || user.getObjectId() == null || acl.getPublicReadAccess() || !acl.getWriteAccess(user)) {
+            return null;
+        }
+        return user.getObjectId();
+    }
+
+    private static void mergeFields(final JSONObject into, final JSONObject from) {
+        final Iterator<String> keys = from.keys();
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            try {
+                into.put(key, from.get(key));
+            } catch (JSONException e) {
+                Log.e(TAG, "Failed to merge " + key, e);
+            }
+        }
+    }
+
+    private static Object encode(final Object value) throws JSONException {
+        if (value instanceof ParseObject) {
+            final ParseObject object = (ParseObject) value;
+            if (object.getObjectId() == null) {
+                throw new IllegalArgumentException("Pointer to an unsaved " + object.getClassName());
+            }
+            return new JSONObject()
+                    .put("__type", POINTER)
+                    .put("className", object.getClassName())
+                    .put("objectId", object.getObjectId());
+        } else if (value instanceof JSONObject) {
+            // Keeps plain JSON apart from encoded pointers
+            return new JSONObject().put("__type", "Object").put("value", value);
+        } else if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof JSONArray) {
+            return value == null ? JSONObject.NULL : value;
+        }
+        throw new IllegalArgumentException("Unsupported value " + value.getClass());
+    }
+
+    private static Object decode(final Object value) {
+        if (value instanceof JSONObject) {
+            final JSONObject object = (JSONObject) value;
+            if (POINTER.equals(object.optString("__type"))) {
+                return ParseObject.createWithoutData(object.optString("className"), object.optString("objectId"));
+            }
+            return object.opt("value");
+        }
+        return value;
+    }
+
+    static class Entry {
+        final String op;
+        final String className;
+        final long enqueuedAt;
+        final JSONObject fields = new JSONObject();
+        // Instances enqueued before they had an objectId, to be given the one the server assigns; not persisted
+        final List<ParseObject> sources = new ArrayList<>();
+        String objectId;
+        String key;
+        String aclUserId;
+        boolean isCurrentInstallation;
+
+        Entry(final String op, final String className, final String objectId, final long enqueuedAt) {
+            this.op = op;
+            this.className = className;
+            this.objectId = objectId;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        /**
+         * @return Key of the object, unique for objects not saved yet
+         */
+        String getObjectKey() {
+            return className + ":" + (isCurrentInstallation ? "current" : objectId != null ? objectId : UUID.randomUUID());
+        }
+
+        /**
+         * Build the object to send. Runs on the background thread.
+         */
+        ParseObject toObject() {
+            final ParseObject object;
+            if (isCurrentInstallation) {
+                object = ParseInstallation.getCurrentInstallation();
+            } else if (objectId != null) {
+                object = ParseObject.createWithoutData(className, objectId);
+            } else {
+                object = ParseObject.create(className);
+            }
+            if (aclUserId != null) {
+                final ParseACL acl = new ParseACL();
+                acl.setReadAccess(aclUserId, true);
+                acl.setWriteAccess(aclUserId, true);
+                object.setACL(acl);
+            }
+            final Iterator<String> keys = fields.keys();
+            while (keys.hasNext()) {
+                final String key = keys.next();
+                final Object value = decode(fields.opt(key));
+                if (value == JSONObject.NULL) {
+                    object.remove(key);
+                } else {
+                    object.put(key, value);
+                }
+            }
+            return object;
+        }
+
+        JSONObject toJson() throws JSONException {
+            return new JSONObject()
+                    .put("op", op)
+                    .put("className", className)
+                    .putOpt("objectId", objectId)
+                    .put("enqueuedAt", enqueuedAt)
+                    .put("fields", fields)
+                    .put("key", key)
+                    .putOpt("aclUserId", aclUserId)
+                    .put("isCurrentInstallation", isCurrentInstallation);
+        }
+
+        static Entry fromJson(final JSONObject json) throws JSONException {
+            final Entry entry = new Entry(json.getString("op"), json.getString("className"),
+                    json.optString("objectId", null), json.getLong("enqueuedAt"));
+            mergeFields(entry.fields, json.getJSONObject("fields"));
+            entry.key = json.getString("key");
+            entry.aclUserId = json.optString("aclUserId", null);
+            entry.isCurrentInstallation = json.optBoolean("isCurrentInstallation");
+            return entry;
+        }
+    }
+
+    static class BatchResult {
+        final List<Entry> written = new ArrayList<>();
+        final List<Entry> rejected = new ArrayList<>();
+        final List<ParseObject> saved = new ArrayList<>();
+        // objectIds given to new objects, applied to their entries on the main thread
+        final Map<Entry, String> objectIds = new HashMap<>();
+        boolean isOffline;
+
+        void onWritten(final Entry entry, final ParseObject object) {
+            written.add(entry);
+            if (SAVE.equals(entry.op)) {
+                saved.add(object);
+            }
+        }
+
+        void keepObjectIds(final List<Entry> batch, final List<ParseObject> objects) {
+            for (int i = 0; i < batch.size(); i++) {
+                final String objectId = objects.get(i).getObjectId();
+                if (batch.get(i).objectId == null && objectId != null) {
+                    objectIds.put(batch.get(i), objectId);
+                }
+            }
+        }
+
+        /**
+         * Apply the result on the main thread: hand out objectIds and remove the entries that are done
+         *
+         * @param entries The pending entries
+         */
+        void applyTo(final List<Entry> entries) {
+            for (Map.Entry<Entry, String> created : objectIds.entrySet()) {
+                // Kept entries are sent as updates from now on
+                final Entry entry = created.getKey();
+                entry.objectId = created.getValue();
+                for (ParseObject source : entry.sources) {
+                    if (source.getObjectId() == null) {
+                        source.setObjectId(entry.objectId);
+                    }
+                }
+                entry.sources.clear();
+            }
+            entries.removeAll(written);
+            entries.removeAll(rejected);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.parse.anydevice.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.v4.util.LruCache;
+
+import com.parse.anydevice.models.Event;
+import com.parse.anydevice.models.Installation;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether devices are online, late or offline.
+ * <p/>
+ * For every device the engine tracks when it was last seen (its latest {@link Event} or session update) and
+ * learns how often it normally reports, as an exponentially weighted moving average of the time between
+ * its events. A device is late once it has been quiet for {@link Thresholds#lateFactor} times its usual
+ * interval and offline after {@link Thresholds#offlineFactor} times. Until an interval has been learnt a
+ * device is online for {@link Thresholds#fallbackOfflineAfter} after it was last seen.
+ * <p/>
+ * Boards also send an event in answer to every command. Those say nothing about how often a board reports
+ * on its own, so events within {@link #REPLY_WINDOW} of a command sent with {@link #onCommandSent(String)}
+ * only count as a sign of life and aren't learnt from. Learnt intervals are kept per installationId and
+ * survive restarts, as relearning one takes several of the board's own reports.
+ * <p/>
+ * The presence of every device is computed when something changes (and re-checked periodically while
+ * anyone is listening), so {@link #getPresence(String)} is a plain lookup.
+ * Must be used from the main thread.
+ */
+public class PresenceEngine {
+    private static final float SMOOTHING = 0.25f;
+    private static final long REFRESH_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    private static final int MAX_DEVICES = 512;
+    // Covers every retry of a command, see RttEstimator
+    private static final long REPLY_WINDOW = TimeUnit.MINUTES.toMillis(5);
+    private static final String PREFERENCES_NAME = "device_presence";
+    private static final String INTERVAL = ":interval";
+    private static final String LAST_REPORT = ":lastReport";
+
+    public static final Thresholds DEFAULT_THRESHOLDS = new Thresholds(3f, 10f, TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(3));
+
+    private static PresenceEngine instance;
+
+    public enum Presence {
+        ONLINE, LATE, OFFLINE
+    }
+
+    public interface Listener {
+        /**
+         * @param installationIds UUIDs of the devices whose presence changed
+         */
+        void onPresenceChanged(@NonNull final Set<String> installationIds);
+    }
+
+    public static class Thresholds {
+        final float lateFactor;
+        final float offlineFactor;
+        final long minInterval;
+        final long fallbackOfflineAfter;
+
+        /**
+         * @param lateFactor           Multiple of the usual interval after which a device is late
+         * @param offlineFactor        Multiple of the usual interval after which a device is offline
+         * @param minInterval          Lower bound for learnt intervals, so very chatty devices don't flap
+         * @param fallbackOfflineAfter Quiet time after which a device without a learnt interval is offline
+         */
+        public Thresholds(final float lateFactor, final float offlineFactor, final long minInterval, final long fallbackOfflineAfter) {
+            this.lateFactor = lateFactor;
+            this.offlineFactor = offlineFactor;
+            this.minInterval = minInterval;
+            this.fallbackOfflineAfter = fallbackOfflineAfter;
+        }
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final LruCache<String, DeviceStats> devices = new LruCache<>(MAX_DEVICES);
+    private final List<Listener> listeners = new ArrayList<>();
+    private final Runnable refreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            refresh();
+            handler.postDelayed(this, REFRESH_INTERVAL);
+        }
+    };
+    private final SharedPreferences preferences;
+    private Thresholds thresholds = DEFAULT_THRESHOLDS;
+
+    private PresenceEngine(final Context context) {
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static void initialize(@NonNull final Context context) {
+        instance = new PresenceEngine(context.getApplicationContext());
+    }
+
+    public static PresenceEngine getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param installationId The UUID of the {@link Installation}
+     * @return The device's precomputed presence; unknown devices are offline
+     */
+    @NonNull
+    public Presence getPresence(@NonNull final String installationId) {
+        final DeviceStats stats = devices.get(installationId);
+        return stats == null ? Presence.OFFLINE : stats.presence;
+    }
+
+    public void setThresholds(@NonNull final Thresholds thresholds) {
+        this.thresholds = thresholds;
+        refresh();
+    }
+
+    public void addListener(@NonNull final Listener listener) {
+        if (listeners.isEmpty()) {
+            handler.postDelayed(refreshRunnable, REFRESH_INTERVAL);
+        }
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(@NonNull final Listener listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty()) {
+            handler.removeCallbacks(refreshRunnable);
+        }
+    }
+
+    /**
+     * Take the latest event of a loaded installation into account, as kept by the {@link DeviceStateStore}
+     *
+     * @param installation Device {@link Installation}, put into the store already
+     */
+    public void observe(@NonNull final Installation installation) {
+        final Event latestEvent = DeviceStateStore.getInstance().getLatestEvent(installation.getInstallationId());
+        if (latestEvent != null && latestEvent.getCreatedAt() != null) {
+            onEvent(installation.getInstallationId(), latestEvent.getCreatedAt());
+        }
+    }
+
+    /**
+     * Record that a command was sent to a device, so that its answer isn't taken for a report of its own
+     *
+     * @param installationId The UUID of the {@link Installation}
+     */
+    public void onCommandSent(@NonNull final String installationId) {
+        getStats(installationId).commandSentAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Record an event of a device and, unless it answers a command, learn from the time since its previous report
+     *
+     * @param installationId The UUID of the {@link Installation}
+     * @param createdAt      When the event was saved
+     */
+    public void onEvent(@NonNull final String installationId, @NonNull final Date createdAt) {
+        final DeviceStats stats = getStats(installationId);
+        final long time = createdAt.getTime();
+        if (time <= stats.lastEventAt) {
+            return;
+        }
+        final boolean isReply = stats.commandSentAt > 0 && Math.abs(time - stats.commandSentAt) <= REPLY_WINDOW;
+        if (!isReply) {
+            if (stats.lastReportAt > 0) {
+                final long delta = time - stats.lastReportAt;
+                stats.interval = stats.interval == 0 ? delta : (long) (SMOOTHING * delta + (1 - SMOOTHING) * stats.interval);
+            }
+            stats.lastReportAt = time;
+            preferences.edit()
+                    .putLong(installationId + INTERVAL, stats.interval)
+                    .putLong(installationId + LAST_REPORT, stats.lastReportAt)
+                    .apply();
+        }
+        stats.lastEventAt = time;
+        stats.lastSeenAt = Math.max(stats.lastSeenAt, time);
+        update(installationId, stats);
+    }
+
+    /**
+     * Record any other sign of life of a device, e.g. an update of its session
+     *
+     * @param installationId The UUID of the {@link Installation}
+     * @param seenAt         When the device was seen
+     */
+    public void onSeen(@NonNull final String installationId, @NonNull final Date seenAt) {
+        final DeviceStats stats = getStats(installationId);
+        if (seenAt.getTime() > stats.lastSeenAt) {
+            stats.lastSeenAt = seenAt.getTime();
+            update(installationId, stats);
+        }
+    }
+
+    private DeviceStats getStats(final String installationId) {
+        DeviceStats stats = devices.get(installationId);
+        if (stats == null) {
+            stats = new DeviceStats();
+            stats.interval = preferences.getLong(installationId + INTERVAL, 0);
+            stats.lastReportAt = preferences.getLong(installationId + LAST_REPORT, 0);
+            devices.put(installationId, stats);
+        }
+        return stats;
+    }
+
+    private void update(final String installationId, final DeviceStats stats) {
+        final Presence presence = classify(stats, System.currentTimeMillis());
+        if (presence != stats.presence) {
+            stats.presence = presence;
+            final Set<String> changed = new HashSet<>();
+            changed.add(installationId);
+            notifyListeners(changed);
+        }
+    }
+
+    /**
+     * Re-classify every device, as time passing alone turns devices late or offline
+     */
+    private void refresh() {
+        final long now = System.currentTimeMillis();
+        final Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, DeviceStats> entry : devices.snapshot().entrySet()) {
+            final DeviceStats stats = entry.getValue();
+            final Presence presence = classify(stats, now);
+            if (presence != stats.presence) {
+                stats.presence = presence;
+                changed.add(entry.getKey());
+            }
+        }
+        if (!changed.isEmpty()) {
+            notifyListeners(changed);
+        }
+    }
+
+    private Presence classify(final DeviceStats stats, final long now) {
+        if (stats.lastSeenAt == 0) {
+            return Presence.OFFLINE;
+        }
+        final long quiet = now - stats.lastSeenAt;
+        if (stats.interval == 0) {
+            return quiet <= thresholds.fallbackOfflineAfter ? Presence.ONLINE : Presence.OFFLINE;
+        }
+        final long interval = Math.max(stats.interval, thresholds.minInterval);
+        if (quiet <= interval * thresholds.lateFactor) {
+            return Presence.ONLINE;
+        }
+        return quiet <= interval * thresholds.offlineFactor ? Presence.LATE : Presence.OFFLINE;
+    }
+
+    private void notifyListeners(final Set<String> installationIds) {
+        for (Listener listener : new ArrayList<>(listeners)) {
+            listener.onPresenceChanged(installationIds);
+        }
+    }
+
+    private static class DeviceStats {
+        private long lastEventAt;
+        // Latest event that wasn't an answer to a command, which intervals are measured from
+        private long lastReportAt;
+        private long commandSentAt;
+        private long lastSeenAt;
+        private long interval;
+        private Presence presence = Presence.OFFLINE;
+    }
+}
@@ -0,0 +1,87 @@
+package com.parse.anydevice.data;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The keys of a class that a screen reads, including keys of the objects its pointers lead to.
+ * <p/>
+ * Keys of pointed-to objects are dotted, e.g. "model.boardType", and their pointers are included, so
+ * {@link QuerySpec#select(Projection)} asks the server for exactly these fields in one round trip.
+ * objectId, createdAt and updatedAt always come along. Projections are immutable.
+ * <p/>
+ * Projected objects are partial: reading a key that wasn't fetched throws, and so does reading a selected key
+ * the server left out because it is unset. Only use them where they are read and dropped; never pin them, as
+ * the local datastore is shared by every screen and keeps whole objects. The keys of the app's projections are
+ * declared in {@link com.parse.anydevice.util.ProjectedKeys}.
+ */
+public class Projection {
+    private final Set<String> keys;
+    private final Set<String> includes;
+
+    /**
+     * @param keys Keys of the class itself
+     */
+    public Projection(@NonNull final String... keys) {
+        final TreeSet<String> keySet = new TreeSet<>();
+        Collections.addAll(keySet, keys);
+        this.keys = Collections.unmodifiableSet(keySet);
+        this.includes = Collections.emptySet();
+    }
+
+    private Projection(final Set<String> keys, final Set<String> includes) {
+        this.keys = Collections.unmodifiableSet(keys);
+        this.includes = Collections.unmodifiableSet(includes);
+    }
+
+    /**
+     * @param pointerKey Key of a pointer of the class
+     * @param projection Keys read of the object the pointer leads to
+     * @return This projection plus the pointer, included with only the given keys
+     */
+    @NonNull
+    public Projection with(@NonNull final String pointerKey, @NonNull final Projection projection) {
+        final TreeSet<String> newKeys = new TreeSet<>(keys);
+        final TreeSet<String> newIncludes = new TreeSet<>(includes);
+        newIncludes.add(pointerKey);
+        for (String include : projection.includes) {
+            newIncludes.add(pointerKey + "." + include);
+        }
+        for (String key : projection.keys) {
+            newKeys.add(pointerKey + "." + key);
+        }
+        return new Projection(newKeys, newIncludes);
+    }
+
+    /**
+     * @param other Projection of the same class, e.g. of another screen
+     * @return Projection with the keys of both, for objects that several screens share
+     */
+    @NonNull
+    public Projection union(@NonNull final Projection other) {
+        final TreeSet<String> newKeys = new TreeSet<>(keys);
+        newKeys.addAll(other.keys);
+        final TreeSet<String> newIncludes = new TreeSet<>(includes);
+        newIncludes.addAll(other.includes);
+        return new Projection(newKeys, newIncludes);
+    }
+
+    /**
+     * @return Keys to select, sorted
+     */
+    @NonNull
+    public Set<String> getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return Pointers to include, sorted
+     */
+    @NonNull
+    public Set<String> getIncludes() {
+        return includes;
+    }
+}
@@ -0,0 +1,179 @@
+package com.parse.anydevice.data;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import com.parse.FindCallback;
+import com.parse.GetCallback;
+import com.parse.ParseException;
+import com.parse.ParseObject;
+import com.parse.ParseQuery;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs {@link QuerySpec}s so that identical queries are only in flight once.
+ * <p/>
+ * A caller asking for a query whose fingerprint matches one already running joins it instead of
+ * starting another round-trip. It immediately gets the most recent result the running query has
+ * produced (e.g. the cached result of a {@link ParseQuery.CachePolicy#CACHE_THEN_NETWORK} query) and
+ * every newer one after that, so nobody is handed a result older than one they have already seen.
+ * Every query run or joined is recorded in {@link QueryMetrics}.
+ * <p/>
+ * Must be used from the main thread, which is also where Parse delivers its callbacks.
+ */
+public class QueryExecutor {
+    private static final String FIND = "find:";
+    private static final String FIRST = "first:";
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    private static final Map<String, Flight<?>> flights = new HashMap<>();
+
+    private QueryExecutor() {}
+
+    /**
+     * Find all objects matching the query, sharing the round-trip with an identical query in flight
+     *
+     * @param spec     The query to run
+     * @param callback Called once per result, like {@link ParseQuery#findInBackground(FindCallback)}
+     */
+    public static <T extends ParseObject> void find(@NonNull final QuerySpec<T> spec, @NonNull final FindCallback<T> callback) {
+        final Flight<List<T>> flight = join(FIND + spec.getFingerprint(), spec, new Receiver<List<T>>() {
+            @Override
+            public void receive(final List<T> result, final ParseException e) {
+                callback.done(result, e);
+            }
+        });
+        if (flight != null) {
+            final QueryMetrics.Timer timer = QueryMetrics.getInstance().start(spec);
+            spec.getQuery().findInBackground(new FindCallback<T>() {
+                @Override
+                public void done(final List<T> result, final ParseException e) {
+                    timer.stop(result == null ? 0 : result.size(), e);
+                    flight.publish(result, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Get the first object matching the query, sharing the round-trip with an identical query in flight
+     *
+     * @param spec     The query to run
+     * @param callback Called once per result, like {@link ParseQuery#getFirstInBackground(GetCallback)}
+     */
+    public static <T extends ParseObject> void getFirst(@NonNull final QuerySpec<T> spec, @NonNull final GetCallback<T> callback) {
+        final Flight<T> flight = join(FIRST + spec.getFingerprint(), spec, new Receiver<T>() {
+            @Override
+            public void receive(final T result, final ParseException e) {
+                callback.done(result, e);
+            }
+        });
+        if (flight != null) {
+            final QueryMetrics.Timer timer = QueryMetrics.getInstance().start(spec);
+            spec.getQuery().getFirstInBackground(new GetCallback<T>() {
+                @Override
+                public void done(final T result, final ParseException e) {
+                    timer.stop(result == null ? 0 : 1, e);
+                    flight.publish(result, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Add the receiver to the flight for the key, creating it if there is none
+     *
+     * @param spec The query, for its expected number of results and its name
+     * @return The new flight that the caller has to start, or null if an existing flight was joined
+     */
+    @SuppressWarnings("unchecked")
+    private static <R> Flight<R> join(final String key, final QuerySpec<?> spec, final Receiver<R> receiver) {
+        final Flight<R> existing = (Flight<R>) flights.get(key);
+        if (existing != null) {
+            QueryMetrics.getInstance().recordHit(spec.getName(), QueryMetrics.Source.SHARED);
+            existing.add(receiver);
+            return null;
+        }
+        final Flight<R> flight = new Flight<>(key, spec.getExpectedResultCount());
+        flight.add(receiver);
+        flights.put(key, flight);
+        return flight;
+    }
+
+    private interface Receiver<R> {
+        void receive(final R result, final ParseException e);
+    }
+
+    private static class Flight<R> {
+        private final String key;
+        private final List<Subscriber<R>> subscribers = new ArrayList<>();
+        private int remainingResults;
+        private int version;
+        private R latestResult;
+        private ParseException latestError;
+
+        Flight(final String key, final int expectedResults) {
+            this.key = key;
+            this.remainingResults = expectedResults;
+        }
+
+        /**
+         * Late joiners are handed the latest result straight away (but asynchronously, like Parse),
+         * unless a newer one reaches them first
+         */
+        void add(final Receiver<R> receiver) {
+            final Subscriber<R> subscriber = new Subscriber<>(receiver);
+            subscribers.add(subscriber);
+            if (version > 0) {
+                final int resultVersion = version;
+                final R result = latestResult;
+                final ParseException error = latestError;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        subscriber.deliver(resultVersion, result, error);
+                    }
+                });
+            }
+        }
+
+        void publish(final R result, final ParseException e) {
+            // A cache miss is only interesting to those who were already waiting
+            final int resultVersion;
+            if (e == null || e.getCode() != ParseException.CACHE_MISS) {
+                resultVersion = ++version;
+                latestResult = result;
+                latestError = e;
+            } else {
+                resultVersion = version;
+            }
+            if (--remainingResults <= 0 && flights.get(key) == this) {
+                flights.remove(key);
+            }
+            for (Subscriber<R> subscriber : new ArrayList<>(subscribers)) {
+                subscriber.deliver(resultVersion, result, e);
+            }
+        }
+    }
+
+    private static class Subscriber<R> {
+        private final Receiver<R> receiver;
+        private int lastVersion = -1;
+
+        Subscriber(final Receiver<R> receiver) {
+            this.receiver = receiver;
+        }
+
+        void deliver(final int resultVersion, final R result, final ParseException e) {
+            if (resultVersion > lastVersion) {
+                lastVersion = resultVersion;
+                receiver.receive(result, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.parse.anydevice.data;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.parse.ParseException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts the queries the app makes and how long they take.
+ * <p/>
+ * Every query is recorded under its {@link QuerySpec#getName() name} with its latency, result size and
+ * whether it was answered without a round-trip to the server (a hit: from memory, the local datastore or a
+ * shared flight) or not. Queries are also attributed to the screen that was showing when they started,
+ * so that screens can be held to a budget of network round-trips, e.g. the device list opening with
+ * at most one. Background queries, like {@link DeviceRepository#sync()}, count towards no screen.
+ * Thread safe.
+ */
+public class QueryMetrics {
+    private static final String TAG = QueryMetrics.class.getSimpleName();
+
+    public static final String SCREEN_DEVICE_LIST = "device-list";
+    public static final String SCREEN_DEVICE_DETAILS = "device-details";
+    public static final String SCREEN_ADD_DEVICE = "add-device";
+
+    private static final QueryMetrics instance = new QueryMetrics(new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    });
+
+    /**
+     * Source of the time queries are measured with, replaced by a fake one in tests
+     */
+    interface Clock {
+        long elapsedRealtime();
+    }
+
+    public enum Source {
+        /** An object indexed in memory, no query was made */
+        MEMORY,
+        /** Joined an identical query in flight */
+        SHARED,
+        /** The local datastore */
+        LOCAL,
+        /** The query cache of a {@link com.parse.ParseQuery.CachePolicy#CACHE_THEN_NETWORK} query */
+        CACHE,
+        /** A round-trip to the server */
+        NETWORK
+    }
+
+    private final Map<String, QueryStats> queries = new TreeMap<>();
+    private final Map<String, ScreenStats> screens = new HashMap<>();
+    private final Map<String, Integer> budgets = new HashMap<>();
+    private final Clock clock;
+    private String currentScreen;
+
+    QueryMetrics(@NonNull final Clock clock) {
+        this.clock = clock;
+        budgets.put(SCREEN_DEVICE_LIST, 1);
+        // Installation and session, plus the recent events charted on the first visit of a device
+        budgets.put(SCREEN_DEVICE_DETAILS, 3);
+        budgets.put(SCREEN_ADD_DEVICE, 2);
+    }
+
+    public static QueryMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start attributing queries to a screen, logging the counts of the previous one. Counts of a screen
+     * start over every time it is entered.
+     *
+     * @param screen Name of the screen, e.g. {@link #SCREEN_DEVICE_LIST}
+     */
+    public synchronized void enterScreen(@NonNull final String screen) {
+        if (currentScreen != null) {
+            Log.d(TAG, currentScreen + ": " + screens.get(currentScreen));
+        }
+        currentScreen = screen;
+        screens.put(screen, new ScreenStats());
+    }
+
+    /**
+     * @param screen            Name of the screen
+     * @param maxNetworkQueries Round-trips a visit of the screen may take; exceeding it is logged as a warning
+     */
+    public synchronized void setBudget(@NonNull final String screen, final int maxNetworkQueries) {
+        budgets.put(screen, maxNetworkQueries);
+    }
+
+    /**
+     * @return true if the latest visit of the screen took no more round-trips than its budget, or it has none
+     */
+    public synchronized boolean isWithinBudget(@NonNull final String screen) {
+        final ScreenStats stats = screens.get(screen);
+        final Integer budget = budgets.get(screen);
+        return stats == null || budget == null || stats.networkQueries <= budget;
+    }
+
+    /**
+     * Time a query made on behalf of the current screen
+     *
+     * @param spec The query about to run
+     * @return Timer to stop once the query returns
+     */
+    @NonNull
+    public synchronized Timer start(@NonNull final QuerySpec<?> spec) {
+        return start(spec.getName(), spec.isLocal(), spec.getExpectedResultCount());
+    }
+
+    /**
+     * Time a query made on behalf of the current screen
+     *
+     * @param name                Name of the query
+     * @param isLocal             true if it runs against the local datastore
+     * @param expectedResultCount Results the query delivers, 2 for a cache then network query
+     * @return Timer to stop once the query returns
+     */
+    @NonNull
+    synchronized Timer start(@NonNull final String name, final boolean isLocal, final int expectedResultCount) {
+        return new Timer(name, isLocal, expectedResultCount, currentScreen);
+    }
+
+    /**
+     * Time a query that belongs to no screen
+     *
+     * @param spec The query about to run
+     * @return Timer to stop once the query returns
+     */
+    @NonNull
+    public Timer startInBackground(@NonNull final QuerySpec<?> spec) {
+        return new Timer(spec.getName(), spec.isLocal(), spec.getExpectedResultCount(), null);
+    }
+
+    /**
+     * Record a lookup answered without making a query
+     *
+     * @param name   Name of the query that was avoided
+     * @param source {@link Source#MEMORY} or {@link Source#SHARED}
+     */
+    public synchronized void recordHit(@NonNull final String name, @NonNull final Source source) {
+        record(name, currentScreen, source, true, -1, 0, false);
+    }
+
+    /**
+     * @return A copy of the counts of a query, or null if it never ran
+     */
+    public synchronized QueryStats getQueryStats(@NonNull final String name) {
+        final QueryStats stats = queries.get(name);
+        return stats == null ? null : new QueryStats(stats);
+    }
+
+    /**
+     * @return A copy of the counts of the latest visit of a screen, or null if it was never entered
+     */
+    public synchronized ScreenStats getScreenStats(@NonNull final String screen) {
+        final ScreenStats stats = screens.get(screen);
+        return stats == null ? null : new ScreenStats(stats);
+    }
+
+    /**
+     * Log the counts and latencies of every query
+     */
+    public synchronized void dump() {
+        for (Map.Entry<String, QueryStats> entry : queries.entrySet()) {
+            Log.d(TAG, entry.getKey() + ": " + entry.getValue());
+        }
+    }
+
+    private synchronized void record(final String name, final String screen, final Source source, final boolean isHit,
+                                     final long latency, final int results, final boolean isError) {
+        QueryStats stats = queries.get(name);
+        if (stats == null) {
+            stats = new QueryStats();
+            queries.put(name, stats);
+        }
+        stats.record(source, isHit, latency, results, isError);
+
+        // A query that outlives its screen still counts towards that visit
+        final ScreenStats screenStats = screen == null ? null : screens.get(screen);
+        if (screenStats != null) {
+            screenStats.record(source, isHit);
+            final Integer budget = budgets.get(screen);
+            if (source == Source.NETWORK && budget != null && screenStats.networkQueries == budget + 1) {
+                Log.w(TAG, screen + " exceeded its budget of " + budget + " network queries with " + name);
+            }
+        }
+    }
+
+    /**
+     * Measures one query from when it was started
+     */
+    public class Timer {
+        private final String name;
+        private final String screen;
+        private final boolean isLocal;
+        private final long start = clock.elapsedRealtime();
+        private int remainingCachedResults;
+
+        private Timer(final String name, final boolean isLocal, final int expectedResultCount, final String screen) {
+            this.name = name;
+            this.screen = screen;
+            this.isLocal = isLocal;
+            this.remainingCachedResults = expectedResultCount - 1;
+        }
+
+        /**
+         * Record a result; queries with a {@link com.parse.ParseQuery.CachePolicy#CACHE_THEN_NETWORK} policy
+         * stop twice, first with the cached result
+         *
+         * @param results Number of objects returned
+         * @param e       The error the query failed with, or null
+         */
+        public void stop(final int results, final ParseException e) {
+            final Source source;
+            if (isLocal) {
+                source = Source.LOCAL;
+            } else if (remainingCachedResults > 0) {
+                remainingCachedResults--;
+                source = Source.CACHE;
+            } else {
+                source = Source.NETWORK;
+            }
+            final boolean isHit = source != Source.NETWORK && e == null && results > 0;
+            record(name, screen, source, isHit, clock.elapsedRealtime() - start, results, e != null);
+        }
+    }
+
+    /**
+     * Counts and latencies of one named query
+     */
+    public static class QueryStats {
+        private final Map<Source, Integer> sources = new TreeMap<>();
+        private final LatencyHistogram latency;
+        private int hits, misses, errors, results;
+
+        QueryStats() {
+            latency = new LatencyHistogram();
+        }
+
+        QueryStats(final QueryStats other) {
+            sources.putAll(other.sources);
+            latency = new LatencyHistogram(other.latency);
+            hits = other.hits;
+            misses = other.misses;
+            errors = other.errors;
+            results = other.results;
+        }
+
+        void record(final Source source, final boolean isHit, final long millis, final int resultCount, final boolean isError) {
+            final Integer count = sources.get(source);
+            sources.put(source, count == null ? 1 : count + 1);
+            if (isHit) {
+                hits++;
+            } else {
+                misses++;
+            }
+            if (isError) {
+                errors++;
+            }
+            if (millis >= 0) {
+                latency.record(millis);
+                results += resultCount;
+            }
+        }
+
+        /**
+         * @param source Where the answers came from
+         * @return How often the query was answered from there
+         */
+        public int getCount(@NonNull final Source source) {
+            final Integer count = sources.get(source);
+            return count == null ? 0 : count;
+        }
+
+        /**
+         * @return Answers that didn't take a round-trip
+         */
+        public int getHits() {
+            return hits;
+        }
+
+        /**
+         * @return Answers that took a round-trip, or that the local datastore or cache couldn't give
+         */
+        public int getMisses() {
+            return misses;
+        }
+
+        public int getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return Objects returned by all queries that ran
+         */
+        public int getResults() {
+            return results;
+        }
+
+        /**
+         * @return A copy of the latencies of the queries that ran
+         */
+        @NonNull
+        public LatencyHistogram getLatency() {
+            return new LatencyHistogram(latency);
+        }
+
+        @Override
+        public String toString() {
+            final int ran = latency.getCount();
+            return sources + " hits=" + hits + " misses=" + misses + " errors=" + errors
+                    + " results/query=" + (ran == 0 ? 0 : results / ran) + " latency " + latency;
+        }
+    }
+
+    /**
+     * Counts of the queries made during one visit of a screen
+     */
+    public static class ScreenStats {
+        private int networkQueries, localQueries, hits, misses;
+
+        ScreenStats() {}
+
+        ScreenStats(final ScreenStats other) {
+            networkQueries = other.networkQueries;
+            localQueries = other.localQueries;
+            hits = other.hits;
+            misses = other.misses;
+        }
+
+        void record(final Source source, final boolean isHit) {
+            if (source == Source.NETWORK) {
+                networkQueries++;
+            } else if (source != Source.MEMORY && source != Source.SHARED) {
+                localQueries++;
+            }
+            if (isHit) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+
+        /**
+         * @return Round-trips to the server
+         */
+        public int getNetworkQueries() {
+            return networkQueries;
+        }
+
+        /**
+         * @return Queries answered by the local datastore or the query cache, found or not
+         */
+        public int getLocalQueries() {
+            return localQueries;
+        }
+
+        public int getHits() {
+            return hits;
+        }
+
+        public int getMisses() {
+            return misses;
+        }
+
+        @Override
+        public String toString() {
+            return networkQueries + " network, " + localQueries + " local, " + hits + " hits, " + misses + " misses";
+        }
+    }
+}
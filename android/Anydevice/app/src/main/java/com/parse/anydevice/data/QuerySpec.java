@@ -0,0 +1,199 @@
+package com.parse.anydevice.data;
+
+import android.support.annotation.NonNull;
+
+import com.parse.ParseObject;
+import com.parse.ParseQuery;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Builds a {@link ParseQuery} together with a normalised fingerprint of it.
+ * <p/>
+ * Two specs that would ask the server the same question have the same fingerprint, no matter in which
+ * order their constraints were added. The cache policy is not part of the fingerprint since it does
+ * not change the answer, only where it comes from. Specs can be named for {@link QueryMetrics}; the name
+ * is not part of the fingerprint either.
+ *
+ * @param <T> The type of {@link ParseObject} being queried
+ */
+public class QuerySpec<T extends ParseObject> {
+    private final ParseQuery<T> query;
+    private final String className;
+    private final Map<String, String> constraints = new TreeMap<>();
+    private final TreeSet<String> includes = new TreeSet<>();
+    private final TreeSet<String> keys = new TreeSet<>();
+    private final StringBuilder order = new StringBuilder();
+    private String name;
+    private String pinName = "";
+    private int limit = -1;
+    private ParseQuery.CachePolicy cachePolicy = ParseQuery.CachePolicy.IGNORE_CACHE;
+
+    public QuerySpec(@NonNull final Class<T> clazz) {
+        query = ParseQuery.getQuery(clazz);
+        className = query.getClassName();
+        name = className;
+    }
+
+    /**
+     * @param name What {@link QueryMetrics} records the query as, the class name by default
+     */
+    public QuerySpec<T> setName(@NonNull final String name) {
+        this.name = name;
+        return this;
+    }
+
+    public QuerySpec<T> whereEqualTo(@NonNull final String key, final Object value) {
+        query.whereEqualTo(key, value);
+        return constrain(key, "$eq", value);
+    }
+
+    public QuerySpec<T> whereGreaterThan(@NonNull final String key, @NonNull final Object value) {
+        query.whereGreaterThan(key, value);
+        return constrain(key, "$gt", value);
+    }
+
+    public QuerySpec<T> whereContainedIn(@NonNull final String key, @NonNull final Collection<?> values) {
+        query.whereContainedIn(key, values);
+        return constrain(key, "$in", values);
+    }
+
+    public QuerySpec<T> whereLessThan(@NonNull final String key, @NonNull final Object value) {
+        query.whereLessThan(key, value);
+        return constrain(key, "$lt", value);
+    }
+
+    public QuerySpec<T> whereExists(@NonNull final String key) {
+        query.whereExists(key);
+        return constrain(key, "$exists", Boolean.TRUE);
+    }
+
+    public QuerySpec<T> whereMatchesKeyInQuery(@NonNull final String key, @NonNull final String keyInQuery, @NonNull final QuerySpec<?> subQuery) {
+        query.whereMatchesKeyInQuery(key, keyInQuery, subQuery.getQuery());
+        return constrain(key, "$select", keyInQuery + " in " + subQuery.getFingerprint());
+    }
+
+    public QuerySpec<T> include(@NonNull final String key) {
+        query.include(key);
+        includes.add(key);
+        return this;
+    }
+
+    /**
+     * Only fetch the keys of a projection, including the pointers it reads. The results must not be pinned.
+     *
+     * @param projection Keys a screen reads, see {@link Projection}
+     */
+    public QuerySpec<T> select(@NonNull final Projection projection) {
+        keys.addAll(projection.getKeys());
+        query.selectKeys(keys);
+        for (String include : projection.getIncludes()) {
+            include(include);
+        }
+        return this;
+    }
+
+    public QuerySpec<T> orderByAscending(@NonNull final String key) {
+        query.orderByAscending(key);
+        order.setLength(0);
+        order.append(key);
+        return this;
+    }
+
+    /**
+     * Sort by another key among objects that are equal in the keys ordered by so far
+     */
+    public QuerySpec<T> addAscendingOrder(@NonNull final String key) {
+        query.addAscendingOrder(key);
+        order.append(',').append(key);
+        return this;
+    }
+
+    public QuerySpec<T> orderByDescending(@NonNull final String key) {
+        query.orderByDescending(key);
+        order.setLength(0);
+        order.append('-').append(key);
+        return this;
+    }
+
+    public QuerySpec<T> setLimit(final int limit) {
+        query.setLimit(limit);
+        this.limit = limit;
+        return this;
+    }
+
+    public QuerySpec<T> setCachePolicy(@NonNull final ParseQuery.CachePolicy policy) {
+        query.setCachePolicy(policy);
+        cachePolicy = policy;
+        return this;
+    }
+
+    /**
+     * Query the objects pinned under the given name in the local datastore instead of the server
+     *
+     * @param pinName Name the objects were pinned with
+     */
+    public QuerySpec<T> fromPin(@NonNull final String pinName) {
+        query.fromPin(pinName);
+        this.pinName = pinName;
+        return this;
+    }
+
+    public QuerySpec<T> setMaxCacheAge(final long maxAgeInMilliseconds) {
+        query.setMaxCacheAge(maxAgeInMilliseconds);
+        return this;
+    }
+
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true if the query reads the local datastore rather than the server
+     */
+    public boolean isLocal() {
+        return !pinName.isEmpty();
+    }
+
+    @NonNull
+    public ParseQuery<T> getQuery() {
+        return query;
+    }
+
+    /**
+     * The query itself can't be asked once the local datastore is enabled, so it is tracked here
+     *
+     * @return How many times the query's callback will be called
+     */
+    public int getExpectedResultCount() {
+        return cachePolicy == ParseQuery.CachePolicy.CACHE_THEN_NETWORK ? 2 : 1;
+    }
+
+    /**
+     * @return Pin, class name, constraints, includes, selected keys, order and limit in a canonical order
+     */
+    @NonNull
+    public String getFingerprint() {
+        return "pin=" + pinName + ";" + className + constraints + includes + "keys=" + keys + ";order=" + order + ";limit=" + limit;
+    }
+
+    private QuerySpec<T> constrain(final String key, final String operator, final Object value) {
+        constraints.put(key + operator, normalise(value));
+        return this;
+    }
+
+    private static String normalise(final Object value) {
+        if (value instanceof ParseObject) {
+            final ParseObject object = (ParseObject) value;
+            return object.getClassName() + ":" + object.getObjectId();
+        } else if (value instanceof Date) {
+            return Long.toString(((Date) value).getTime());
+        }
+        return String.valueOf(value);
+    }
+}
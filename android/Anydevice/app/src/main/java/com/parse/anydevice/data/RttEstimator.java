@@ -0,0 +1,100 @@
+package com.parse.anydevice.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Learns how long each device takes to answer a command, to know how long to wait for it.
+ * <p/>
+ * Round-trip times from sending a command to receiving the device's event are smoothed like TCP does
+ * (RFC 6298): the smoothed RTT and RTT variation are exponentially weighted moving averages, and the
+ * timeout is the smoothed RTT plus four times the variation. Until a device has answered once the timeout
+ * is {@link #INITIAL_TIMEOUT}. Retries wait twice as long as the attempt before. Only commands answered at
+ * the first attempt should be sampled, as it is unknown which attempt a retried command's answer belongs to.
+ * <p/>
+ * Estimates are kept per installationId and survive restarts. Must be used from the main thread.
+ */
+public class RttEstimator {
+    private static final String PREFERENCES_NAME = "device_rtt";
+    private static final String SMOOTHED = ":srtt";
+    private static final String VARIATION = ":rttvar";
+    private static final float ALPHA = 1 / 8f;
+    private static final float BETA = 1 / 4f;
+    private static final int K = 4;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long INITIAL_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    private static final long MIN_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+
+    private static RttEstimator instance;
+
+    private final SharedPreferences preferences;
+
+    private RttEstimator(final Context context) {
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized RttEstimator getInstance(@NonNull final Context context) {
+        if (instance == null) {
+            instance = new RttEstimator(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Add a measured round-trip
+     *
+     * @param installationId The UUID of the device's {@link com.parse.anydevice.models.Installation}
+     * @param rtt            Milliseconds from sending a command to receiving the event confirming it
+     */
+    public void onSample(@NonNull final String installationId, final long rtt) {
+        final float smoothed = preferences.getFloat(installationId + SMOOTHED, -1);
+        final float variation = preferences.getFloat(installationId + VARIATION, -1);
+        final float newSmoothed, newVariation;
+        if (smoothed < 0) {
+            newSmoothed = rtt;
+            newVariation = rtt / 2f;
+        } else {
+            newVariation = (1 - BETA) * variation + BETA * Math.abs(smoothed - rtt);
+            newSmoothed = (1 - ALPHA) * smoothed + ALPHA * rtt;
+        }
+        preferences.edit()
+                .putFloat(installationId + SMOOTHED, newSmoothed)
+                .putFloat(installationId + VARIATION, newVariation)
+                .apply();
+    }
+
+    /**
+     * @param installationId The UUID of the device's {@link com.parse.anydevice.models.Installation}
+     * @return Smoothed round-trip time in milliseconds, -1 if the device never answered
+     */
+    public long getSmoothedRtt(@NonNull final String installationId) {
+        return (long) preferences.getFloat(installationId + SMOOTHED, -1);
+    }
+
+    /**
+     * @param installationId The UUID of the device's {@link com.parse.anydevice.models.Installation}
+     * @param attempt        1 for the first time a command is sent, 2 for the first retry and so on
+     * @return Milliseconds to wait for the device to answer the attempt
+     */
+    public long getTimeout(@NonNull final String installationId, final int attempt) {
+        final float smoothed = preferences.getFloat(installationId + SMOOTHED, -1);
+        long timeout = INITIAL_TIMEOUT;
+        if (smoothed >= 0) {
+            final float variation = preferences.getFloat(installationId + VARIATION, 0);
+            timeout = Math.max(MIN_TIMEOUT, (long) (smoothed + K * variation));
+        }
+        return Math.min(MAX_TIMEOUT, timeout << Math.min(attempt - 1, 16));
+    }
+
+    /**
+     * @param attempt The attempt that timed out
+     * @return true if the command should be sent again
+     */
+    public boolean shouldRetry(final int attempt) {
+        return attempt < MAX_ATTEMPTS;
+    }
+}
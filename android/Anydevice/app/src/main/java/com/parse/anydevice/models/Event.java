@@ -2,17 +2,16 @@ package com.parse.anydevice.models;
 
 import com.parse.ParseClassName;
 import com.parse.ParseObject;
+import com.parse.anydevice.data.Projection;
+import com.parse.anydevice.util.IsoDates;
+import com.parse.anydevice.util.ProjectedKeys;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.lang.reflect.Field;
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Locale;
-import java.util.SimpleTimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -23,42 +22,70 @@ public class Event extends ParseObject {
     public static final String PARSE_CLASS_NAME = "Event";
     public static final String INSTALLATION_ID = "installationId";
     public static final String VALUE = "value";
-    private static final String CREATED_AT = "createdAt";
+    public static final String CREATED_AT = "createdAt";
+    private static final String OBJECT_ID = "objectId";
+
+    /**
+     * The details screen charts the reported state of recent events, which are fetched for that alone
+     */
+    public static final Projection PROJECTION_DEVICE_DETAILS = new Projection(ProjectedKeys.DEVICE_DETAILS_EVENTS);
 
     public Event() {}
 
     public static Event fromJson(final JSONObject object) {
         try {
-            final Event event = ParseObject.create(Event.class);
+            // Keep the object id so the event can be told apart from the installation's latest event
+            final Event event = object.has(OBJECT_ID)
+                    ? ParseObject.createWithoutData(Event.class, object.getString(OBJECT_ID))
+                    : ParseObject.create(Event.class);
             event.put(INSTALLATION_ID, object.getString(INSTALLATION_ID));
             event.put(VALUE, new JSONObject(object.getString(VALUE)));
 
-            event.setCreatedAt(object.getString(CREATED_AT));
+            event.setCreatedAt(IsoDates.parse(object.getString(CREATED_AT)));
             return event;
-        } catch (JSONException e) {
+        } catch (JSONException | ParseException e) {
             e.printStackTrace();
         }
         return null;
     }
 
+    /**
+     * Create an event from already decoded fields, e.g. those of a push payload
+     *
+     * @param objectId       Object id of the event, or null if unknown
+     * @param installationId Object id of the {@link Installation} that saved the event
+     * @param value          The event's value
+     * @param createdAt      When the event was saved
+     * @return The event
+     */
+    public static Event create(final String objectId, final String installationId, final JSONObject value, final Date createdAt) {
+        final Event event = objectId != null
+                ? ParseObject.createWithoutData(Event.class, objectId)
+                : ParseObject.create(Event.class);
+        event.put(INSTALLATION_ID, installationId);
+        event.put(VALUE, value);
+        event.setCreatedAt(createdAt);
+        return event;
+    }
+
     public String getInstallationId() {
         return getString(INSTALLATION_ID);
     }
 
+    /**
+     * @return The event's value, or null if it has none or it wasn't fetched
+     */
     public JSONObject getValue() {
-        return getJSONObject(VALUE);
+        return has(VALUE) ? getJSONObject(VALUE) : null;
     }
 
-    private void setCreatedAt(final String createdAtString) {
-        final DateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
-        sdf.setTimeZone(new SimpleTimeZone(0, "GMT"));
-
+    private void setCreatedAt(final Date createdAt) {
         try {
             final Field createdAtField = ParseObject.class.getDeclaredField("createdAt");
             createdAtField.setAccessible(true);
-            createdAtField.set(this, sdf.parse(createdAtString));
+            createdAtField.set(this, createdAt);
             createdAtField.setAccessible(false);
-        } catch (NoSuchFieldException | IllegalAccessException | ParseException e) {
+        } catch (NoSuchFieldException | IllegalAccessException e) {
             e.printStackTrace();
         }
     }
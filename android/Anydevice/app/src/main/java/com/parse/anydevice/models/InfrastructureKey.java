@@ -2,9 +2,9 @@ package com.parse.anydevice.models;
 
 import com.parse.ParseClassName;
 import com.parse.ParseObject;
-import com.parse.ParseQuery;
+import com.parse.anydevice.data.QueryMetrics;
+import com.parse.anydevice.data.QuerySpec;
 
-import java.util.concurrent.TimeUnit;
 
 @ParseClassName(InfrastructureKey.PARSE_CLASS_NAME)
 public class InfrastructureKey extends ParseObject {
@@ -49,14 +49,11 @@ public class InfrastructureKey extends ParseObject {
     }
 
     /**
-     * Helper to create a query with a cache
+     * Helper to create a query
      *
-     * @return InfrastructureKey query
+     * @return InfrastructureKey query, named for {@link QueryMetrics}
      */
-    public static ParseQuery<InfrastructureKey> getQuery() {
-        final ParseQuery<InfrastructureKey> query = ParseQuery.getQuery(InfrastructureKey.class);
-        query.setMaxCacheAge(TimeUnit.DAYS.toMillis(30));
-        query.setCachePolicy(ParseQuery.CachePolicy.CACHE_THEN_NETWORK);
-        return query;
+    public static QuerySpec<InfrastructureKey> getQuery() {
+        return new QuerySpec<>(InfrastructureKey.class).setName("infrastructure-key");
     }
 }
@@ -1,8 +1,12 @@
 package com.parse.anydevice.models;
 
+import android.support.annotation.NonNull;
+
 import com.parse.ParseClassName;
 import com.parse.ParseInstallation;
 import com.parse.ParseUser;
+import com.parse.anydevice.data.QueryMetrics;
+import com.parse.anydevice.data.QuerySpec;
 
 /**
  * Extension of the ParseInstallation with details about the device
@@ -49,7 +53,17 @@ public class Installation extends ParseInstallation {
     }
 
     public boolean hasRecentEvent() {
-        return getLatestEvent() != null && getLatestEvent().isRecent();
+        final Event latestEvent = getLatestEvent();
+        return latestEvent != null && latestEvent.isRecent();
+    }
+
+    /**
+     * Helper to create a query for whole installations, with their model and latest event included
+     *
+     * @return Installation query, named for {@link QueryMetrics}
+     */
+    public static QuerySpec<Installation> getDeviceQuery() {
+        return new QuerySpec<>(Installation.class).setName("installation").include(MODEL).include(LATEST_EVENT);
     }
 
     public static Installation getCurrentInstallation() {
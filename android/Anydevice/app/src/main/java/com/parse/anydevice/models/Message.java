@@ -4,6 +4,7 @@ import com.parse.ParseACL;
 import com.parse.ParseClassName;
 import com.parse.ParseObject;
 import com.parse.ParseUser;
+import com.parse.anydevice.data.Outbox;
 
 /**
  * Messages are used to send data to the device (e.g. turn light on)
@@ -32,11 +33,12 @@ public class Message extends ParseObject {
 
     /**
      * When the message is saved the cloud code sends a push to the device by installationId.
-     * Alias for saveInBackground.
+     * Queued in the {@link Outbox}, where a newer message to the same device replaces one not sent yet.
      */
     public void send() {
         // We need to set the ACL for messages to protect them from other users
         setACL(new ParseACL(ParseUser.getCurrentUser()));
-        saveInBackground();
+        Outbox.getInstance().enqueueSave(this, PARSE_CLASS_NAME + ":" + getString(INSTALLATION_ID),
+                INSTALLATION_ID, OWNER, VALUE, FORMAT);
     }
 }
@@ -7,9 +7,9 @@ import com.parse.ParseClassName;
 import com.parse.ParseFile;
 import com.parse.ParseImageView;
 import com.parse.ParseObject;
-import com.parse.ParseQuery;
+import com.parse.anydevice.data.QueryMetrics;
+import com.parse.anydevice.data.QuerySpec;
 
-import java.util.concurrent.TimeUnit;
 
 /**
  * Model represents the device and the application it's running
@@ -24,8 +24,11 @@ public class Model extends ParseObject {
 
     public Model() {}
 
+    /**
+     * @return true for the model boards fall back to; only that model has the field
+     */
     public boolean isDefault() {
-        return getBoolean(DEFAULT);
+        return has(DEFAULT) && getBoolean(DEFAULT);
     }
 
     public String getBoardType() {
@@ -36,6 +39,13 @@ public class Model extends ParseObject {
         return getString(APP_NAME);
     }
 
+    /**
+     * @return The board's icon, or null if the model has none
+     */
+    public ParseFile getIcon() {
+        return has(ICON) ? (ParseFile) get(ICON) : null;
+    }
+
     /**
      * Helper to put image from URL in ImageView
      *
@@ -44,21 +54,19 @@ public class Model extends ParseObject {
      * @param drawableRes   Drawable for the placeholder icon
      */
     public static void putLogoIntoImageView(final Model model, @NonNull final ParseImageView imageView, @DrawableRes final int drawableRes) {
-        final ParseFile imagePtr = (ParseFile) model.get(Model.ICON);
+        final ParseFile imagePtr = model.getIcon();
         imageView.setPlaceholder(imageView.getResources().getDrawable(drawableRes));
         imageView.setParseFile(imagePtr);
         imageView.loadInBackground();
     }
 
     /**
-     * Helper to create a query with a cache
+     * Helper to create a query
      *
-     * @return Model query
+     * @return Model query, named for {@link QueryMetrics}
      */
-    public static ParseQuery<Model> getQuery() {
-        final ParseQuery<Model> query = ParseQuery.getQuery(Model.class);
-        query.setMaxCacheAge(TimeUnit.DAYS.toMillis(30));
-        query.setCachePolicy(ParseQuery.CachePolicy.CACHE_THEN_NETWORK);
-        return query;
+    public static QuerySpec<Model> getQuery() {
+        return new QuerySpec<>(Model.class).setName("models");
     }
+
 }
@@ -7,6 +7,7 @@ import android.util.Log;
 import com.parse.anydevice.app.Constants;
 import com.parse.anydevice.models.Installation;
 import com.parse.anydevice.models.UserSession;
+import com.parse.anydevice.util.Ssids;
 
 import java.io.IOException;
 
@@ -39,9 +40,9 @@ class BoardTask implements Runnable {
      */
     @Override
     public void run() {
-        final String platform = Constants.getPlatform(config.getSsid());
+        final String platform = Ssids.getPlatform(config.getSsid());
         switch (platform) {
-            case Constants.PLATFORM_CC3200: {
+            case Ssids.PLATFORM_CC3200: {
                 tryToPost();
                 break;
             }
@@ -145,7 +145,7 @@ public class ProvisioningDispatcher {
      * @param userSessionId The {@link UserSession} object id of the board
      */
     private void waitForEvent(@NonNull final String userSessionId) {
-        final WaitForEventTask task = new WaitForEventTask(context, userSessionId, new ProvisioningCallback() {
+        final WaitForEventTask task = new WaitForEventTask(userSessionId, new ProvisioningCallback() {
             @Override
             public void success() {
                 provisionComplete(true);
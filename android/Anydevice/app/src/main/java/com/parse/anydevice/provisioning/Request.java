@@ -3,6 +3,8 @@ package com.parse.anydevice.provisioning;
 import android.support.annotation.NonNull;
 import android.support.v4.util.Pair;
 
+import com.parse.anydevice.util.FormEncoder;
+
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 
@@ -13,7 +15,6 @@ import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLEncoder;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -115,22 +116,11 @@ class Request {
      * @throws UnsupportedEncodingException
      */
     private static String getQuery(@NonNull final List<NameValuePair> params) throws UnsupportedEncodingException {
-        final StringBuilder result = new StringBuilder();
-        boolean first = true;
-
+        final FormEncoder encoder = new FormEncoder();
         for (NameValuePair pair : params) {
-            if (first) {
-                first = false;
-            } else {
-                result.append("&");
-            }
-
-            result.append(URLEncoder.encode(pair.getName(), UTF8_ENCODING));
-            result.append("=");
-            result.append(URLEncoder.encode(pair.getValue(), UTF8_ENCODING));
+            encoder.add(pair.getName(), pair.getValue());
         }
-
-        return result.toString();
+        return encoder.toString();
     }
 
 
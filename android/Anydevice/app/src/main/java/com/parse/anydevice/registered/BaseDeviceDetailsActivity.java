@@ -1,7 +1,6 @@
 package com.parse.anydevice.registered;
 
 import android.app.AlertDialog;
-import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -12,11 +11,12 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.Toast;
 
-import com.parse.DeleteCallback;
-import com.parse.GetCallback;
 import com.parse.ParseException;
-import com.parse.ParseQuery;
 import com.parse.anydevice.R;
+import com.parse.anydevice.app.NotificationEngine;
+import com.parse.anydevice.data.DeviceRepository;
+import com.parse.anydevice.data.Outbox;
+import com.parse.anydevice.data.QueryMetrics;
 import com.parse.anydevice.models.Installation;
 import com.parse.anydevice.models.UserSession;
 
@@ -24,13 +24,15 @@ import com.parse.anydevice.models.UserSession;
  * Base Activity for device detail screens.
  * <p/>
  * Devices are identified by their {@link Installation} and {@link UserSession} which references an Installation UUID.
+ * Both are the instances held by the {@link com.parse.anydevice.data.DeviceStateStore}, shared with the other screens.
  */
-public abstract class BaseDeviceDetailsActivity extends ActionBarActivity {
+public abstract class BaseDeviceDetailsActivity extends ActionBarActivity implements DeviceDetailsLoader.Callbacks {
     private static final String TAG = BaseDeviceDetailsActivity.class.getSimpleName();
     private static final String INSTALLATION_ID = "installationId";
 
     protected UserSession userSession;
     protected Installation installation;
+    private DeviceDetailsLoader loader;
 
     /**
      * Create intent to open an implementation of a device details page
@@ -50,7 +52,16 @@ public abstract class BaseDeviceDetailsActivity extends ActionBarActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        loadInstallation(getIntent().getStringExtra(INSTALLATION_ID));
+        loadDevice(getIntent().getStringExtra(INSTALLATION_ID));
+    }
+
+    @Override
+    protected void onPause() {
+        if (loader != null) {
+            loader.cancel();
+            loader = null;
+        }
+        super.onPause();
     }
 
     @Override
@@ -82,18 +93,15 @@ public abstract class BaseDeviceDetailsActivity extends ActionBarActivity {
     }
 
     /**
-     * Query to load installation based on UUID
+     * Load installation and user session based on UUID, both at once
      *
      * @param installationId    Which {@link Installation} we're looking for
      */
-    private void loadInstallation(final String installationId) {
+    private void loadDevice(final String installationId) {
         if (installationId != null && !installationId.isEmpty()) {
-            final ParseQuery<Installation> query = ParseQuery.getQuery(Installation.class);
-            query.setCachePolicy(ParseQuery.CachePolicy.CACHE_THEN_NETWORK);
-            query.include(Installation.MODEL);
-            query.include(Installation.LATEST_EVENT);
-            query.whereEqualTo(Installation.INSTALLATION_ID, installationId);
-            query.getFirstInBackground(new InstallationGetCallback());
+            QueryMetrics.getInstance().enterScreen(QueryMetrics.SCREEN_DEVICE_DETAILS);
+            loader = new DeviceDetailsLoader(installationId);
+            loader.load(this);
         } else {
             finish();
         }
@@ -114,29 +122,14 @@ public abstract class BaseDeviceDetailsActivity extends ActionBarActivity {
     }
 
     /**
-     * Delete the {@link UserSession} and show a progress dialog. Finish the activity when complete.
+     * Queue the deletion of the {@link UserSession} in the {@link Outbox}, forget the device locally and finish
      */
     private void deleteUserSession() {
         if (userSession != null) {
-            final ProgressDialog dialog = new ProgressDialog(this);
-            dialog.setIndeterminate(true);
-            dialog.setCancelable(false);
-            dialog.setMessage(getString(R.string.delete_user_session_message));
-            dialog.show();
-            userSession.deleteInBackground(new DeleteCallback() {
-                @Override
-                public void done(ParseException e) {
-                    dialog.hide();
-                    if (e == null) {
-                        Toast.makeText(BaseDeviceDetailsActivity.this, "Successfully deleted user session", Toast.LENGTH_SHORT).show();
-                        dialog.dismiss();
-                        finish();
-                    } else {
-                        Toast.makeText(BaseDeviceDetailsActivity.this, "Failed to delete user session", Toast.LENGTH_SHORT).show();
-                        Log.e(TAG, "Error deleting user session", e);
-                    }
-                }
-            });
+            Outbox.getInstance().enqueueDelete(userSession);
+            DeviceRepository.getInstance().removeDevice(installation.getInstallationId());
+            Toast.makeText(this, "Device removed", Toast.LENGTH_SHORT).show();
+            finish();
         }
     }
 
@@ -145,54 +138,31 @@ public abstract class BaseDeviceDetailsActivity extends ActionBarActivity {
      *  */
     protected abstract void onUserSessionLoaded();
 
-
-    private class InstallationGetCallback implements GetCallback<Installation> {
-
-        /**
-         * Callback when installation is retrieved from Parse.
-         * If installation fails to load for anything other than a cache miss, the activity is finished.
-         *
-         * @param returnedInstallation  {@link Installation} coming from cache or server
-         * @param e                     {@link ParseException} for retrieve call
-         */
-        @Override
-        public void done(final Installation returnedInstallation, final ParseException e) {
-            if (e == null) {
-                installation = returnedInstallation;
-                final ParseQuery<UserSession> query = ParseQuery.getQuery(UserSession.class);
-                query.setCachePolicy(ParseQuery.CachePolicy.CACHE_THEN_NETWORK);
-                query.whereEqualTo(UserSession.INSTALLATION_ID, installation.getInstallationId());
-                query.getFirstInBackground(new UserSessionGetCallback());
-            } else if (e.getCode() == ParseException.CACHE_MISS) {
-                Log.w(TAG, e.getLocalizedMessage());
-            } else {
-                Log.e(TAG, e.getLocalizedMessage());
-                finish();
-            }
-        }
+    /**
+     * Callback when both the installation and the user session have been loaded
+     *
+     * @param returnedInstallation {@link Installation} coming from memory, the local datastore or server
+     * @param returnedUserSession  {@link UserSession} coming from memory, the local datastore or server
+     */
+    @Override
+    public void onDeviceLoaded(@NonNull final Installation returnedInstallation, @NonNull final UserSession returnedUserSession) {
+        loader = null;
+        installation = returnedInstallation;
+        userSession = returnedUserSession;
+        NotificationEngine.getInstance().clear(this, userSession.getObjectId());
+        onUserSessionLoaded();
     }
 
-    private class UserSessionGetCallback implements GetCallback<UserSession> {
-
-        /**
-         * Callback when user session has been retrieved from Parse.
-         * If the session fails to load for anything other than a cache miss, the activity is finished.
-         *
-         * @param returnedUserSession {@link UserSession} coming from cache or server
-         * @param e                   {@link ParseException} for retrieve call
-         */
-        @Override
-        public void done(final UserSession returnedUserSession, final ParseException e) {
-            if (e == null) {
-                userSession = returnedUserSession;
-                onUserSessionLoaded();
-            } else if (e.getCode() == ParseException.CACHE_MISS) {
-                Log.w(TAG, e.getLocalizedMessage());
-            } else {
-                Log.e(TAG, e.getLocalizedMessage());
-                finish();
-            }
-        }
+    /**
+     * Callback when either part of the device failed to load; the activity is finished
+     *
+     * @param e {@link ParseException} for the failed lookup
+     */
+    @Override
+    public void onDeviceLoadFailed(@NonNull final ParseException e) {
+        loader = null;
+        Log.e(TAG, e.getLocalizedMessage());
+        finish();
     }
 
     private class DialogOnClickListener implements DialogInterface.OnClickListener {
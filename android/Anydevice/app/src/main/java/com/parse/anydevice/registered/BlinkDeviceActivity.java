@@ -1,29 +1,28 @@
 package com.parse.anydevice.registered;
 
 import android.annotation.SuppressLint;
-import android.app.ProgressDialog;
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
 import android.os.Bundle;
-import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.Toolbar;
+import android.util.Log;
 import android.view.View;
 import android.widget.RadioButton;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.parse.ParseImageView;
-import com.parse.ParsePushBroadcastReceiver;
 import com.parse.ParseUser;
 import com.parse.anydevice.R;
-import com.parse.anydevice.app.Constants;
+import com.parse.anydevice.app.DeviceEventBus;
+import com.parse.anydevice.app.PushPayload;
+import com.parse.anydevice.data.DeviceStateStore;
+import com.parse.anydevice.data.PresenceEngine;
+import com.parse.anydevice.data.RttEstimator;
 import com.parse.anydevice.models.Event;
 import com.parse.anydevice.models.Message;
 import com.parse.anydevice.models.Model;
+import com.parse.anydevice.views.TelemetryChartView;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.text.DateFormat;
@@ -32,9 +31,12 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
 
 public class BlinkDeviceActivity extends BaseDeviceDetailsActivity implements View.OnClickListener {
+    private static final String TAG = BlinkDeviceActivity.class.getSimpleName();
+    private static final String CONTROL_LED = "led";
+    private static final float PENDING_ALPHA = 0.5f;
 
     @SuppressLint("UseSparseArrays")
     private static final Map<Integer, String> stateMap = Collections.unmodifiableMap(new HashMap<Integer, String>(3) {{
@@ -42,41 +44,53 @@ public class BlinkDeviceActivity extends BaseDeviceDetailsActivity implements Vi
         put(R.id.led_off, "off");
         put(R.id.blink_led, "blink");
     }});
+    // Level charted for each LED state
+    private static final Map<String, Float> stateLevels = Collections.unmodifiableMap(new HashMap<String, Float>(3) {{
+        put("on", 1f);
+        put("off", 0f);
+        put("blink", 0.5f);
+    }});
 
     private ParseImageView deviceImage;
     private TextView deviceName;
     private TextView deviceType;
     private TextView deviceLastSeen;
-    private UpdateProgressDialog progressDialog;
-    private EventReceiver eventReceiver = new EventReceiver();
-    private Event lastEvent;
+    private TelemetryChartView telemetryChart;
+    private OptimisticCommands commands;
+    private RttEstimator rttEstimator;
+    private final DeviceStateStore.Observer stateObserver = new StateObserver();
+    private final TelemetryHistory.Listener telemetryListener = new TelemetryListener();
+    private final TelemetryHistory.Levels levels = new TelemetryHistory.Levels() {
+        @Override
+        public Float getLevel(@NonNull final Event event) {
+            final JSONObject value = event.getValue();
+            return value == null ? null : stateLevels.get(value.optString("state"));
+        }
+    };
 
     @Override
     protected void onCreate(final Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_blink_device);
         setupToolbar();
-        progressDialog = new UpdateProgressDialog(this);
+        commands = new OptimisticCommands(new CommandListener());
+        rttEstimator = RttEstimator.getInstance(this);
         deviceImage = (ParseImageView) findViewById(R.id.device_img);
         deviceName = (TextView) findViewById(R.id.device_name);
         deviceType = (TextView) findViewById(R.id.device_type);
         deviceLastSeen = (TextView) findViewById(R.id.device_last_seen);
+        telemetryChart = (TelemetryChartView) findViewById(R.id.telemetry_chart);
 
         for (Integer id : stateMap.keySet()) {
             findViewById(id).setOnClickListener(this);
         }
     }
 
-    @Override
-    protected void onResume() {
-        super.onResume();
-        registerReceiver(eventReceiver, Constants.EVENT_INTENT_FILTER);
-    }
-
     @Override
     protected void onPause() {
-        progressDialog.dismiss();
-        unregisterReceiver(eventReceiver);
+        commands.clear();
+        DeviceStateStore.getInstance().unsubscribe(stateObserver);
+        TelemetryHistory.getInstance().removeListener(telemetryListener);
         super.onPause();
     }
 
@@ -89,14 +103,27 @@ public class BlinkDeviceActivity extends BaseDeviceDetailsActivity implements Vi
         deviceType.setText(deviceModel.getBoardType());
         displayLastSeen();
         final TextView errorMessage = (TextView) findViewById(R.id.error);
-        errorMessage.setVisibility((installation.hasRecentEvent()) ? View.INVISIBLE : View.VISIBLE);
-        final Event latestEvent = installation.getLatestEvent();
+        final PresenceEngine presenceEngine = PresenceEngine.getInstance();
+        presenceEngine.observe(installation);
+        presenceEngine.onSeen(installation.getInstallationId(), userSession.getUpdatedAt());
+        final boolean isOffline = presenceEngine.getPresence(installation.getInstallationId()) == PresenceEngine.Presence.OFFLINE;
+        errorMessage.setVisibility(isOffline ? View.VISIBLE : View.INVISIBLE);
+        final Event latestEvent = DeviceStateStore.getInstance().getLatestEvent(installation.getInstallationId());
+        // The chart's samples are kept across resumes; the latest event is only added if it's new
+        final TelemetryHistory telemetryHistory = TelemetryHistory.getInstance();
+        telemetryChart.setDownsampler(telemetryHistory.getDownsampler(installation.getInstallationId()));
+        telemetryHistory.addListener(telemetryListener);
+        telemetryHistory.seed(installation, levels);
         if (latestEvent != null) {
             displayEvent(latestEvent);
-            errorMessage.setText(R.string.error_device_inactive_for_time);
+            chartEvent(latestEvent);
+            errorMessage.setText(R.string.error_device_offline);
         } else {
             errorMessage.setText(R.string.error_device_no_events);
         }
+        // Both end when the activity is paused
+        DeviceStateStore.getInstance().subscribe(installation.getInstallationId(), stateObserver);
+        DeviceEventBus.getInstance().subscribe(this, DeviceEventBus.PRIORITY_DEVICE_SCREEN, installation.getInstallationId(), new EventSubscriber());
     }
 
     /**
@@ -120,21 +147,30 @@ public class BlinkDeviceActivity extends BaseDeviceDetailsActivity implements Vi
     }
 
     /**
-     * Sends a message up to Parse to be pushed to the associated board
+     * Sends a message up to Parse to be pushed to the associated board, showing the state as pending
+     * until the board confirms it or the timeout learnt for the board passes
      *
-     * @param state the current state of the LED ("on", "off", "blink")
+     * @param state the requested state of the LED ("on", "off", "blink")
      */
     private void trySendMessage(@NonNull final String state) {
         if (installation != null) {
-            progressDialog.show();
-            Message message = new Message();
-            message.setInstallationId(installation.getInstallationId());
-            message.putOwner(ParseUser.getCurrentUser());
-            message.putValue(String.format("{\"alert\": \"%s\"}", state), Message.FORMAT_JSON);
-            message.send();
+            commands.request(CONTROL_LED, state, rttEstimator.getTimeout(installation.getInstallationId(), 1));
+            sendMessage(state);
         }
     }
 
+    /**
+     * @param state the requested state of the LED ("on", "off", "blink")
+     */
+    private void sendMessage(@NonNull final String state) {
+        Message message = new Message();
+        message.setInstallationId(installation.getInstallationId());
+        message.putOwner(ParseUser.getCurrentUser());
+        message.putValue(String.format("{\"alert\": \"%s\"}", state), Message.FORMAT_JSON);
+        message.send();
+        PresenceEngine.getInstance().onCommandSent(installation.getInstallationId());
+    }
+
     /**
      * Populate views for given event
      *
@@ -144,16 +180,43 @@ public class BlinkDeviceActivity extends BaseDeviceDetailsActivity implements Vi
         findViewById(R.id.led_on).setEnabled(true);
         findViewById(R.id.led_off).setEnabled(true);
         findViewById(R.id.blink_led).setEnabled(true);
-        lastEvent = event;
         displayLastSeen();
-        final JSONObject value = event.getValue();
-        try {
-            final String type = value.getString("state");
-            for (Integer id : stateMap.keySet()) {
-                ((RadioButton) findViewById(id)).setChecked(stateMap.get(id).equals(type));
+        final String state = event.getValue().optString("state", null);
+        if (state != null) {
+            final long rtt = commands.confirm(CONTROL_LED, state);
+            if (rtt >= 0) {
+                final String installationId = installation.getInstallationId();
+                rttEstimator.onSample(installationId, rtt);
+                Log.d(TAG, "Confirmed in " + rtt + " ms, smoothed RTT " + rttEstimator.getSmoothedRtt(installationId) + " ms");
             }
-        } catch (JSONException e) {
-            e.printStackTrace();
+        } else {
+            Log.w(TAG, "Event without a state");
+        }
+    }
+
+    /**
+     * Check the LED state the user expects, dimmed while the board hasn't confirmed it
+     */
+    private void displayLedState() {
+        final String state = commands.getDisplayedValue(CONTROL_LED);
+        final boolean isPending = commands.isPending(CONTROL_LED);
+        for (Integer id : stateMap.keySet()) {
+            final RadioButton button = (RadioButton) findViewById(id);
+            final boolean isChecked = stateMap.get(id).equals(state);
+            button.setChecked(isChecked);
+            button.setAlpha(isChecked && isPending ? PENDING_ALPHA : 1f);
+        }
+    }
+
+    /**
+     * Add the LED state of an event to the telemetry chart
+     *
+     * @param event {@link Event} received from the board
+     */
+    private void chartEvent(final Event event) {
+        final Float level = levels.getLevel(event);
+        if (level != null && TelemetryHistory.getInstance().add(installation.getInstallationId(), event.getCreatedAt().getTime(), level)) {
+            telemetryChart.onSamplesChanged();
         }
     }
 
@@ -162,6 +225,7 @@ public class BlinkDeviceActivity extends BaseDeviceDetailsActivity implements Vi
      */
     private void displayLastSeen() {
         final DateFormat sdf = new SimpleDateFormat("h:mm a d MMM yy", Locale.US);
+        final Event lastEvent = DeviceStateStore.getInstance().getLatestEvent(installation.getInstallationId());
         final String lastSeen;
         if (lastEvent != null && lastEvent.getCreatedAt().after(userSession.getUpdatedAt())) {
             lastSeen = sdf.format(lastEvent.getCreatedAt());
@@ -171,60 +235,72 @@ public class BlinkDeviceActivity extends BaseDeviceDetailsActivity implements Vi
         deviceLastSeen.setText(String.format(getString(R.string.last_seen), lastSeen));
     }
 
-    private class UpdateProgressDialog extends ProgressDialog {
-        private final Handler handler = new Handler();
-        private final Runnable failRunnable = new Runnable() {
-            @Override
-            public void run() {
-                Toast.makeText(getContext(), "Failed to receive update from board", Toast.LENGTH_SHORT).show();
-                dismiss();
-                if (lastEvent != null) {
-                    displayEvent(lastEvent);
-                }
-            }
-        };
+    private class CommandListener implements OptimisticCommands.Listener {
 
-        public UpdateProgressDialog(Context context) {
-            super(context);
-            setMessage("Updating...");
-            setIndeterminate(true);
-            setCancelable(false);
+        @Override
+        public void onCommandStateChanged(@NonNull final String control) {
+            displayLedState();
         }
 
-
+        /**
+         * Send the command again with a longer timeout, unless the board is offline or was tried often enough
+         */
         @Override
-        public void show() {
-            super.show();
-            handler.postDelayed(failRunnable, TimeUnit.SECONDS.toMillis(10));
+        public long onCommandTimedOut(@NonNull final String control, @NonNull final String requested, final int attempt) {
+            final String installationId = installation.getInstallationId();
+            final boolean isOffline = PresenceEngine.getInstance().getPresence(installationId) == PresenceEngine.Presence.OFFLINE;
+            if (isOffline || !rttEstimator.shouldRetry(attempt)) {
+                return 0;
+            }
+            Log.i(TAG, "No answer to attempt " + attempt + ", sending " + requested + " again");
+            sendMessage(requested);
+            return rttEstimator.getTimeout(installationId, attempt + 1);
         }
 
+        /**
+         * Let the user know without blocking the screen; the LED shows its confirmed state again
+         */
         @Override
-        public void dismiss() {
-            handler.removeCallbacks(failRunnable);
-            super.dismiss();
+        public void onCommandRolledBack(@NonNull final String control, @NonNull final String requested) {
+            Toast.makeText(BlinkDeviceActivity.this, getString(R.string.error_command_not_confirmed, requested), Toast.LENGTH_SHORT).show();
         }
     }
 
-    private class EventReceiver extends BroadcastReceiver {
+    private class StateObserver implements DeviceStateStore.Observer {
 
+        /**
+         * Show the new latest event of this device; the store only reports events newer than the shown one
+         */
         @Override
-        public void onReceive(final Context context, final Intent intent) {
-            progressDialog.dismiss();
-            final String data = intent.getStringExtra(ParsePushBroadcastReceiver.KEY_PUSH_DATA);
-            try {
-                final JSONObject dataJson = new JSONObject(data);
-                final String userSessionId = dataJson.getString("userSessionId");
-                if (userSession == null || !userSessionId.equals(userSession.getObjectId())) {
-                    return;
-                }
-                // Consume the broadcast so that we don't show a notification in the status bar
-                abortBroadcast();
-                final Event event = Event.fromJson(dataJson.getJSONObject("event"));
+        public void onDevicesChanged(@NonNull final Set<String> installationIds) {
+            final Event event = DeviceStateStore.getInstance().getLatestEvent(installation.getInstallationId());
+            if (event != null) {
                 displayEvent(event);
-            } catch (JSONException e) {
-                e.printStackTrace();
+                chartEvent(event);
             }
         }
     }
 
+    private class TelemetryListener implements TelemetryHistory.Listener {
+
+        @Override
+        public void onSeeded(@NonNull final String installationId) {
+            if (installation != null && installationId.equals(installation.getInstallationId())) {
+                telemetryChart.onSamplesChanged();
+            }
+        }
+    }
+
+    private class EventSubscriber implements DeviceEventBus.Subscriber {
+
+        /**
+         * Consume events of this device so that we don't show a notification in the status bar.
+         * They are shown once the {@link DeviceStateStore} reports them.
+         */
+        @Override
+        public boolean onDeviceEvent(@NonNull final PushPayload payload) {
+            return true;
+        }
+    }
+
 }
@@ -0,0 +1,92 @@
+package com.parse.anydevice.registered;
+
+import android.support.annotation.NonNull;
+
+import com.parse.GetCallback;
+import com.parse.ParseException;
+import com.parse.anydevice.data.DeviceRepository;
+import com.parse.anydevice.models.Installation;
+import com.parse.anydevice.models.UserSession;
+
+/**
+ * Loads the {@link Installation} and {@link UserSession} of a device at the same time.
+ * <p/>
+ * Both lookups only need the installationId, so neither waits for the other. If the list screen already
+ * prefetched the device (see {@link DeviceRepository#prefetch(String)}) the result is delivered
+ * synchronously from {@link #load(Callbacks)}, before the first frame is drawn.
+ */
+class DeviceDetailsLoader {
+    interface Callbacks {
+        /**
+         * Called once both parts of the device are available
+         */
+        void onDeviceLoaded(@NonNull final Installation installation, @NonNull final UserSession userSession);
+
+        /**
+         * Called once if either part fails to load
+         */
+        void onDeviceLoadFailed(@NonNull final ParseException e);
+    }
+
+    private final String installationId;
+    private Callbacks callbacks;
+    private Installation installation;
+    private UserSession userSession;
+
+    DeviceDetailsLoader(@NonNull final String installationId) {
+        this.installationId = installationId;
+    }
+
+    /**
+     * Issue both lookups, or deliver straight away from the repository snapshot
+     *
+     * @param callbacks Receives the result on the main thread
+     */
+    void load(@NonNull final Callbacks callbacks) {
+        this.callbacks = callbacks;
+        final DeviceRepository repository = DeviceRepository.getInstance();
+        installation = repository.peekInstallation(installationId);
+        userSession = repository.peekUserSession(installationId);
+        if (installation == null) {
+            repository.getInstallation(installationId, new GetCallback<Installation>() {
+                @Override
+                public void done(final Installation returnedInstallation, final ParseException e) {
+                    installation = returnedInstallation;
+                    onPartLoaded(e);
+                }
+            });
+        }
+        if (userSession == null) {
+            repository.getUserSession(installationId, new GetCallback<UserSession>() {
+                @Override
+                public void done(final UserSession returnedUserSession, final ParseException e) {
+                    userSession = returnedUserSession;
+                    onPartLoaded(e);
+                }
+            });
+        }
+        onPartLoaded(null);
+    }
+
+    /**
+     * Stop delivering results, e.g. when the activity is paused
+     */
+    void cancel() {
+        callbacks = null;
+    }
+
+    private void onPartLoaded(final ParseException e) {
+        if (callbacks == null) {
+            return;
+        }
+        if (e != null) {
+            final Callbacks failed = callbacks;
+            callbacks = null;
+            failed.onDeviceLoadFailed(e);
+        } else if (installation != null && userSession != null) {
+            final Callbacks loaded = callbacks;
+            callbacks = null;
+            loaded.onDeviceLoaded(installation, userSession);
+        }
+    }
+}
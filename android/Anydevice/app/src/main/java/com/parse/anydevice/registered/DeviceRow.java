@@ -0,0 +1,115 @@
+package com.parse.anydevice.registered;
+
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+
+import com.parse.ParseFile;
+import com.parse.anydevice.data.PresenceEngine;
+import com.parse.anydevice.models.Installation;
+import com.parse.anydevice.models.Model;
+
+/**
+ * What a row of the device list shows, copied out of an {@link Installation} and its {@link Model} once per change.
+ * <p/>
+ * Binding and diffing only read these fields instead of going through the ParseObjects' maps, and the list
+ * doesn't keep the installations themselves, nor their icon's ParseFile: the icon is bound from its URL.
+ * Rows are immutable; a changed device gets a new row.
+ */
+class DeviceRow {
+    private final String installationId;
+    private final String objectId;
+    private final String deviceName;
+    private final String boardType;
+    private final String iconUrl;
+    private final PresenceEngine.Presence presence;
+
+    /**
+     * @param installation A device {@link Installation} including its {@link Model}
+     * @param presence     The device's presence at the time
+     */
+    DeviceRow(@NonNull final Installation installation, @NonNull final PresenceEngine.Presence presence) {
+        final Model model = installation.getModel();
+        installationId = installation.getInstallationId();
+        objectId = installation.getObjectId();
+        deviceName = installation.getDeviceName();
+        boardType = model.getBoardType();
+        final ParseFile icon = model.getIcon();
+        iconUrl = icon != null ? icon.getUrl() : null;
+        this.presence = presence;
+    }
+
+    private DeviceRow(final DeviceRow row, final PresenceEngine.Presence presence) {
+        installationId = row.installationId;
+        objectId = row.objectId;
+        deviceName = row.deviceName;
+        boardType = row.boardType;
+        iconUrl = row.iconUrl;
+        this.presence = presence;
+    }
+
+    /**
+     * @return A copy of this row with another presence
+     */
+    @NonNull
+    DeviceRow withPresence(@NonNull final PresenceEngine.Presence presence) {
+        return presence == this.presence ? this : new DeviceRow(this, presence);
+    }
+
+    @NonNull
+    String getInstallationId() {
+        return installationId;
+    }
+
+    /**
+     * @return Object id of the {@link Installation}, the list's paging cursor
+     */
+    String getObjectId() {
+        return objectId;
+    }
+
+    String getDeviceName() {
+        return deviceName;
+    }
+
+    String getBoardType() {
+        return boardType;
+    }
+
+    /**
+     * @return URL of the board's icon, null for the placeholder
+     */
+    String getIconUrl() {
+        return iconUrl;
+    }
+
+    @NonNull
+    PresenceEngine.Presence getPresence() {
+        return presence;
+    }
+
+    /**
+     * @return true if only the error indicator needs rebinding to go from this row to the other one
+     */
+    boolean differsOnlyInPresence(@NonNull final DeviceRow other) {
+        return showsSameDevice(other) && presence != other.presence;
+    }
+
+    private boolean showsSameDevice(final DeviceRow other) {
+        return TextUtils.equals(deviceName, other.deviceName) && TextUtils.equals(boardType, other.boardType)
+                && TextUtils.equals(iconUrl, other.iconUrl);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (!(o instanceof DeviceRow)) {
+            return false;
+        }
+        final DeviceRow other = (DeviceRow) o;
+        return TextUtils.equals(installationId, other.installationId) && showsSameDevice(other) && presence == other.presence;
+    }
+
+    @Override
+    public int hashCode() {
+        return installationId.hashCode();
+    }
+}
@@ -0,0 +1,161 @@
+package com.parse.anydevice.registered;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * State of a device's controls as the user expects it to be, ahead of the device confirming it.
+ * <p/>
+ * A requested value is shown straight away as pending. The device reports its actual state in events;
+ * one that matches the request confirms it, while others only update the confirmed state, since the
+ * command may still be on its way. When a request isn't confirmed in time the listener can send it again
+ * and keep waiting, or it is rolled back to the last confirmed value. Every control has its own pending
+ * request and timer, so several can be in flight at once; a newer request for the same control replaces
+ * the older one.
+ * Must be used from the main thread.
+ */
+class OptimisticCommands {
+    interface Listener {
+        /**
+         * Called when a control's displayed or pending state changed
+         *
+         * @param control Name of the control
+         */
+        void onCommandStateChanged(@NonNull final String control);
+
+        /**
+         * Called when an attempt of a request wasn't confirmed in time
+         *
+         * @param control   Name of the control
+         * @param requested The requested value
+         * @param attempt   1 for the first attempt, 2 for the first retry and so on
+         * @return Milliseconds to wait for the next attempt, which the listener has sent, or 0 to roll back
+         */
+        long onCommandTimedOut(@NonNull final String control, @NonNull final String requested, final int attempt);
+
+        /**
+         * Called when a request was given up and the control went back to its confirmed value
+         *
+         * @param control   Name of the control
+         * @param requested The value that wasn't confirmed
+         */
+        void onCommandRolledBack(@NonNull final String control, @NonNull final String requested);
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, String> confirmed = new HashMap<>();
+    private final Map<String, Pending> pending = new HashMap<>();
+    private final Listener listener;
+
+    /**
+     * @param listener Notified of every change
+     */
+    OptimisticCommands(@NonNull final Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Show a value as pending until the device confirms it or the timeout passes
+     *
+     * @param control Name of the control
+     * @param value   The requested value
+     * @param timeout Milliseconds to wait for the first attempt to be confirmed
+     */
+    void request(@NonNull final String control, @NonNull final String value, final long timeout) {
+        final Pending previous = pending.remove(control);
+        if (previous != null) {
+            handler.removeCallbacks(previous);
+        }
+        if (TextUtils.equals(value, confirmed.get(control))) {
+            // Nothing to wait for, but the command is still sent in case the device is out of step
+            listener.onCommandStateChanged(control);
+            return;
+        }
+        final Pending request = new Pending(control, value);
+        pending.put(control, request);
+        handler.postDelayed(request, timeout);
+        listener.onCommandStateChanged(control);
+    }
+
+    /**
+     * Record the state a device reported, confirming a matching pending request
+     *
+     * @param control Name of the control
+     * @param value   The state from the device's event
+     * @return Milliseconds the confirmed request was pending, -1 if none was confirmed or it took more than one
+     *         attempt, so that it's unknown which attempt was answered
+     */
+    long confirm(@NonNull final String control, final String value) {
+        confirmed.put(control, value);
+        final Pending request = pending.get(control);
+        long pendingTime = -1;
+        if (request != null && TextUtils.equals(request.value, value)) {
+            pending.remove(control);
+            handler.removeCallbacks(request);
+            if (request.attempt == 1) {
+                pendingTime = SystemClock.elapsedRealtime() - request.requestedAt;
+            }
+        }
+        listener.onCommandStateChanged(control);
+        return pendingTime;
+    }
+
+    /**
+     * @return The pending value of a control if it has one, otherwise its confirmed value, null if neither is known
+     */
+    String getDisplayedValue(@NonNull final String control) {
+        final Pending request = pending.get(control);
+        return request != null ? request.value : confirmed.get(control);
+    }
+
+    boolean isPending(@NonNull final String control) {
+        return pending.containsKey(control);
+    }
+
+    /**
+     * Drop all pending requests without notifying, e.g. when the screen goes away
+     */
+    void clear() {
+        for (Pending request : pending.values()) {
+            handler.removeCallbacks(request);
+        }
+        pending.clear();
+    }
+
+    private class Pending implements Runnable {
+        final String control;
+        final String value;
+        final long requestedAt = SystemClock.elapsedRealtime();
+        int attempt = 1;
+
+        Pending(final String control, final String value) {
+            this.control = control;
+            this.value = value;
+        }
+
+        /**
+         * Timed out
+         */
+        @Override
+        public void run() {
+            if (pending.get(control) != this) {
+                return;
+            }
+            final long retryTimeout = listener.onCommandTimedOut(control, value, attempt);
+            if (retryTimeout > 0) {
+                attempt++;
+                handler.postDelayed(this, retryTimeout);
+            } else {
+                pending.remove(control);
+                listener.onCommandStateChanged(control);
+                listener.onCommandRolledBack(control, value);
+            }
+        }
+    }
+}
@@ -1,35 +1,78 @@
 package com.parse.anydevice.registered;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
 import com.parse.FindCallback;
 import com.parse.ParseException;
-import com.parse.ParseQuery;
 import com.parse.anydevice.R;
+import com.parse.anydevice.data.DeviceRepository;
+import com.parse.anydevice.data.DeviceStateStore;
+import com.parse.anydevice.data.PresenceEngine;
+import com.parse.anydevice.data.QueryExecutor;
+import com.parse.anydevice.data.QuerySpec;
 import com.parse.anydevice.models.Installation;
-import com.parse.anydevice.models.Model;
-import com.parse.anydevice.models.UserSession;
+import com.parse.anydevice.views.DiffingAdapter;
 import com.parse.anydevice.views.RegisteredDeviceItemView;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Adapter for all devices registered to the current user
+ * <p/>
+ * Devices are read from the {@link DeviceRepository} a page at a time ordered by object id, which is unique and never changes, so the
+ * last loaded id can be used as a cursor. Pages before and after the loaded ones are fetched as rows
+ * close to either end are bound, and at most {@link #MAX_WINDOW_SIZE} devices are kept in memory.
+ * Loaded installations are handed to the {@link DeviceStateStore}; the list itself only keeps a {@link DeviceRow} per device,
+ * built again from the store when the device or its presence changes.
+ * Rows are keyed by installation UUID; when only a device's presence changes, just its error indicator is rebound.
+ * A page that fails to load is tried again with exponential backoff while the list is attached.
  */
-class RegisteredDeviceListAdapter extends RecyclerView.Adapter<RegisteredDeviceListAdapter.RegisteredDeviceViewHolder> {
+class RegisteredDeviceListAdapter extends DiffingAdapter<DeviceRow, RegisteredDeviceListAdapter.RegisteredDeviceViewHolder> {
+    private static final String TAG = RegisteredDeviceListAdapter.class.getSimpleName();
+    private static final Object PAYLOAD_PRESENCE = new Object();
+    private static final String OBJECT_ID = "objectId";
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_WINDOW_SIZE = PAGE_SIZE * 4;
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+    private static final long MIN_RETRY_DELAY = TimeUnit.SECONDS.toMillis(2);
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
 
     public static interface OnDeviceClickListener {
-        void onDeviceClicked(final Installation installation);
+        void onDeviceClicked(final String installationId);
     }
 
-    private final List<Installation> installations = Collections.synchronizedList(new ArrayList<Installation>());
     private OnDeviceClickListener deviceClickListener;
+    private boolean hasMoreBefore, hasMoreAfter, isLoadingPage;
+    // Incremented on every full reload so that pages requested for an older list are dropped
+    private int generation;
+    // Devices that changed while a page was loading; the rows submitted for it were built before
+    private final Set<String> changedWhileLoading = new HashSet<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private long retryDelay = MIN_RETRY_DELAY;
+    private final Runnable loadNextPageRunnable = new Runnable() {
+        @Override
+        public void run() {
+            loadNextPage();
+        }
+    };
+    private final Runnable loadPreviousPageRunnable = new Runnable() {
+        @Override
+        public void run() {
+            loadPreviousPage();
+        }
+    };
 
     public RegisteredDeviceListAdapter() {}
 
@@ -41,18 +84,85 @@ class RegisteredDeviceListAdapter extends RecyclerView.Adapter<RegisteredDeviceL
 
     @Override
     public void onBindViewHolder(final RegisteredDeviceViewHolder holder, final int position) {
-        holder.setInstallation(installations.get(position));
+        holder.setRow(getItem(position));
+        if (position >= getItemCount() - PREFETCH_DISTANCE) {
+            loadNextPage();
+        } else if (position < PREFETCH_DISTANCE) {
+            loadPreviousPage();
+        }
     }
 
     @Override
-    public int getItemCount() {
-        return installations.size();
+    public void onBindViewHolder(final RegisteredDeviceViewHolder holder, final int position, final List<Object> payloads) {
+        if (!payloads.isEmpty() && Collections.singleton(PAYLOAD_PRESENCE).containsAll(payloads)) {
+            holder.setPresence(getItem(position));
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(final RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        handler.removeCallbacksAndMessages(null);
+    }
+
+    @NonNull
+    @Override
+    protected String getKey(@NonNull final DeviceRow row) {
+        return row.getInstallationId();
+    }
+
+    @Override
+    protected Object getContent(@NonNull final DeviceRow row) {
+        // Rows are immutable, so they are their own snapshot
+        return row;
+    }
+
+    @Override
+    protected Object getChangePayload(final Object oldContent, final Object newContent) {
+        return ((DeviceRow) oldContent).differsOnlyInPresence((DeviceRow) newContent) ? PAYLOAD_PRESENCE : null;
+    }
+
+    /**
+     * @param installationId The UUID of an {@link Installation}
+     * @return false if the device is unknown although every device is loaded, in which case the list needs a full reload
+     */
+    public boolean mayContain(@NonNull final String installationId) {
+        for (DeviceRow row : getItems()) {
+            if (installationId.equals(row.getInstallationId())) {
+                return true;
+            }
+        }
+        // The device may simply be outside of the loaded pages; it will be fresh when paged in
+        return hasMoreBefore || hasMoreAfter;
     }
 
-    public void setInstallations(@NonNull final List<Installation> newInstallations) {
-        installations.clear();
-        installations.addAll(newInstallations);
-        notifyDataSetChanged();
+    /**
+     * Refresh the rows of devices whose state or presence changed; a row is only rebound if what it shows changed.
+     * Their rows are built again from the installations in the {@link DeviceStateStore}, and once more after a
+     * page that was loading meanwhile is shown, as its rows may predate the change.
+     *
+     * @param installationIds UUIDs of the {@link Installation}s that changed
+     */
+    public void onDevicesChanged(@NonNull final Set<String> installationIds) {
+        if (isLoadingPage) {
+            changedWhileLoading.addAll(installationIds);
+        }
+        final DeviceStateStore store = DeviceStateStore.getInstance();
+        final List<DeviceRow> rows = getItems();
+        for (int i = 0; i < rows.size(); i++) {
+            final String installationId = rows.get(i).getInstallationId();
+            if (installationIds.contains(installationId)) {
+                final Installation installation = store.getInstallation(installationId);
+                if (installation != null) {
+                    replaceItem(i, createRow(installation));
+                } else {
+                    // Removed or evicted from the store; its presence is still current
+                    replaceItem(i, rows.get(i).withPresence(PresenceEngine.getInstance().getPresence(installationId)));
+                }
+            }
+        }
     }
 
     public void setOnDeviceClickListener(@NonNull final OnDeviceClickListener listener) {
@@ -60,34 +170,196 @@ class RegisteredDeviceListAdapter extends RecyclerView.Adapter<RegisteredDeviceL
     }
 
     /**
-     * Make a request to the Parse.com cloud to fetch all device {@link Installation}s that correspond to the current user
+     * Load the first page of the current user's device {@link Installation}s from the local datastore.
+     * Called again whenever {@link DeviceRepository} syncs new changes.
      */
     public void loadObjects() {
-        final ParseQuery<UserSession> query = ParseQuery.getQuery(UserSession.class);
-        query.setCachePolicy(ParseQuery.CachePolicy.CACHE_THEN_NETWORK);
+        final int requestGeneration = ++generation;
+        // The new list replaces whatever was to be tried again
+        handler.removeCallbacksAndMessages(null);
+        // No paging until the first page is shown, as the cursors come from the shown rows
+        isLoadingPage = true;
+        final QuerySpec<Installation> query = createPageQuery();
+        query.orderByAscending(OBJECT_ID);
+        QueryExecutor.find(query, new FindCallback<Installation>() {
+            @Override
+            public void done(final List<Installation> page, final ParseException e) {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                if (e == null) {
+                    retryDelay = MIN_RETRY_DELAY;
+                    submitList(storePage(page), new Runnable() {
+                        @Override
+                        public void run() {
+                            hasMoreBefore = false;
+                            hasMoreAfter = page.size() == PAGE_SIZE;
+                            onPageApplied();
+                        }
+                    });
+                } else {
+                    isLoadingPage = false;
+                    changedWhileLoading.clear();
+                    onPageFailed("first", e, new Runnable() {
+                        @Override
+                        public void run() {
+                            if (requestGeneration == generation) {
+                                loadObjects();
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
 
-        final ParseQuery<Installation> installationParseQuery = ParseQuery.getQuery(Installation.class);
-        installationParseQuery.whereMatchesKeyInQuery(Installation.INSTALLATION_ID, UserSession.INSTALLATION_ID, query);
-        installationParseQuery.whereEqualTo(Installation.DEVICE_TYPE, "embedded");
-        installationParseQuery.whereExists(Installation.MODEL);
-        installationParseQuery.include(Installation.MODEL);
-        installationParseQuery.include(Installation.LATEST_EVENT);
+    /**
+     * Fetch the page following the last loaded device, dropping pages from the start if the window is full
+     */
+    private void loadNextPage() {
+        if (!hasMoreAfter || isLoadingPage || getItemCount() == 0) {
+            return;
+        }
+        isLoadingPage = true;
+        final int requestGeneration = generation;
+        final QuerySpec<Installation> query = createPageQuery();
+        query.whereGreaterThan(OBJECT_ID, getItem(getItemCount() - 1).getObjectId());
+        query.orderByAscending(OBJECT_ID);
+        QueryExecutor.find(query, new FindCallback<Installation>() {
+            @Override
+            public void done(final List<Installation> page, final ParseException e) {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                if (e == null) {
+                    retryDelay = MIN_RETRY_DELAY;
+                    final List<DeviceRow> window = new ArrayList<>(getItems());
+                    window.addAll(storePage(page));
+                    final int overflow = window.size() - MAX_WINDOW_SIZE;
+                    if (overflow > 0) {
+                        window.subList(0, overflow).clear();
+                    }
+                    submitList(window, new Runnable() {
+                        @Override
+                        public void run() {
+                            hasMoreAfter = page.size() == PAGE_SIZE;
+                            hasMoreBefore |= overflow > 0;
+                            onPageApplied();
+                        }
+                    });
+                } else {
+                    isLoadingPage = false;
+                    changedWhileLoading.clear();
+                    onPageFailed("next", e, loadNextPageRunnable);
+                }
+            }
+        });
+    }
 
-        installationParseQuery.findInBackground(new FindCallback<Installation>() {
+    /**
+     * Fetch the page preceding the first loaded device, dropping pages from the end if the window is full
+     */
+    private void loadPreviousPage() {
+        if (!hasMoreBefore || isLoadingPage || getItemCount() == 0) {
+            return;
+        }
+        isLoadingPage = true;
+        final int requestGeneration = generation;
+        final QuerySpec<Installation> query = createPageQuery();
+        query.whereLessThan(OBJECT_ID, getItem(0).getObjectId());
+        query.orderByDescending(OBJECT_ID);
+        QueryExecutor.find(query, new FindCallback<Installation>() {
             @Override
-            public void done(final List<Installation> installations, final ParseException e) {
+            public void done(final List<Installation> page, final ParseException e) {
+                if (requestGeneration != generation) {
+                    return;
+                }
                 if (e == null) {
-                    setInstallations(installations);
+                    retryDelay = MIN_RETRY_DELAY;
+                    final List<DeviceRow> window = storePage(page);
+                    Collections.reverse(window);
+                    window.addAll(getItems());
+                    final int overflow = window.size() - MAX_WINDOW_SIZE;
+                    if (overflow > 0) {
+                        window.subList(window.size() - overflow, window.size()).clear();
+                    }
+                    submitList(window, new Runnable() {
+                        @Override
+                        public void run() {
+                            hasMoreBefore = page.size() == PAGE_SIZE;
+                            hasMoreAfter |= overflow > 0;
+                            onPageApplied();
+                        }
+                    });
                 } else {
-                    e.printStackTrace();
+                    isLoadingPage = false;
+                    changedWhileLoading.clear();
+                    onPageFailed("previous", e, loadPreviousPageRunnable);
                 }
             }
         });
     }
 
+    /**
+     * Refresh the rows of devices that changed while the page that was just shown was loaded
+     */
+    private void onPageApplied() {
+        isLoadingPage = false;
+        if (!changedWhileLoading.isEmpty()) {
+            final Set<String> changed = new HashSet<>(changedWhileLoading);
+            changedWhileLoading.clear();
+            onDevicesChanged(changed);
+        }
+    }
+
+    /**
+     * Try a failed page again later, as rows near the end may not be bound again to trigger it
+     *
+     * @param page  Which page failed, for the log
+     * @param e     Why it failed
+     * @param retry Loads the page again
+     */
+    private void onPageFailed(final String page, final ParseException e, final Runnable retry) {
+        Log.e(TAG, "Failed to load the " + page + " page, trying again in " + retryDelay + " ms", e);
+        handler.removeCallbacks(retry);
+        handler.postDelayed(retry, retryDelay);
+        retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+    }
+
+    /**
+     * Local query for one page of the device {@link Installation}s pinned by {@link DeviceRepository}
+     *
+     * @return Installation query without ordering or cursor
+     */
+    private static QuerySpec<Installation> createPageQuery() {
+        return DeviceRepository.createLocalInstallationQuery().setName("device-list-page").setLimit(PAGE_SIZE);
+    }
+
+    /**
+     * Hand a loaded page to the {@link DeviceStateStore}, which applies events received meanwhile, learn presence
+     * from it and build its rows
+     *
+     * @param page Installations in the order they were loaded
+     * @return A row for every installation, in the same order
+     */
+    private static List<DeviceRow> storePage(final List<Installation> page) {
+        DeviceStateStore.getInstance().putInstallations(page);
+        final PresenceEngine presenceEngine = PresenceEngine.getInstance();
+        final List<DeviceRow> rows = new ArrayList<>(page.size());
+        for (Installation installation : page) {
+            presenceEngine.observe(installation);
+            rows.add(createRow(installation));
+        }
+        return rows;
+    }
+
+    private static DeviceRow createRow(final Installation installation) {
+        return new DeviceRow(installation, PresenceEngine.getInstance().getPresence(installation.getInstallationId()));
+    }
+
     class RegisteredDeviceViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
         private final RegisteredDeviceItemView view;
-        private Installation installation;
+        private DeviceRow row;
 
         public RegisteredDeviceViewHolder(final View view) {
             super(view);
@@ -97,13 +369,17 @@ class RegisteredDeviceListAdapter extends RecyclerView.Adapter<RegisteredDeviceL
 
         @Override
         public void onClick(final View v) {
-            deviceClickListener.onDeviceClicked(installation);
+            deviceClickListener.onDeviceClicked(row.getInstallationId());
+        }
+
+        public void setRow(@NonNull final DeviceRow row) {
+            this.row = row;
+            this.view.setDevice(row.getIconUrl(), row.getDeviceName(), row.getBoardType(), row.getPresence());
         }
 
-        public void setInstallation(@NonNull final Installation installation) {
-            this.installation = installation;
-            final Model model = installation.getModel();
-            this.view.setDevice(model, installation.getDeviceName(), model.getBoardType(), installation.hasRecentEvent());
+        public void setPresence(@NonNull final DeviceRow row) {
+            this.row = row;
+            this.view.setPresence(row.getPresence());
         }
     }
 }
@@ -1,8 +1,6 @@
 package com.parse.anydevice.registered;
 
 import android.app.AlertDialog;
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
@@ -10,25 +8,47 @@ import android.support.annotation.NonNull;
 import android.support.v7.app.ActionBarActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.Toolbar;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 
-import com.parse.ParseQuery;
 import com.parse.ParseUser;
 import com.parse.anydevice.R;
-import com.parse.anydevice.app.Constants;
+import com.parse.anydevice.app.DeviceEventBus;
 import com.parse.anydevice.app.MainActivity;
-import com.parse.anydevice.models.Installation;
+import com.parse.anydevice.app.PushPayload;
+import com.parse.anydevice.data.DeviceRepository;
+import com.parse.anydevice.data.DeviceStateStore;
+import com.parse.anydevice.data.PresenceEngine;
+import com.parse.anydevice.data.QueryMetrics;
 import com.parse.anydevice.unregistered.UnregisteredDevicesActivity;
 import com.parse.anydevice.views.EmptyStateRecyclerView;
 
-public class RegisteredDevicesActivity extends ActionBarActivity implements RegisteredDeviceListAdapter.OnDeviceClickListener {
+import java.util.Set;
+
+public class RegisteredDevicesActivity extends ActionBarActivity implements RegisteredDeviceListAdapter.OnDeviceClickListener, DeviceRepository.Listener,
+        PresenceEngine.Listener {
+    private static final String TAG = RegisteredDevicesActivity.class.getSimpleName();
     private RegisteredDeviceListAdapter adapter;
-    private BroadcastReceiver eventReceiver = new BroadcastReceiver() {
+    private final DeviceEventBus.Subscriber eventSubscriber = new DeviceEventBus.Subscriber() {
         @Override
-        public void onReceive(final Context context, final Intent intent) {
-            adapter.loadObjects();
+        public boolean onDeviceEvent(@NonNull final PushPayload payload) {
+            // The event is in the DeviceStateStore already; only fall back to syncing for a device we don't know about yet
+            if (!payload.hasEvent() || !adapter.mayContain(payload.getInstallationId())) {
+                if (!payload.hasEvent()) {
+                    Log.w(TAG, "Push without a valid event");
+                }
+                DeviceRepository.getInstance().sync();
+            }
+            // The list doesn't consume events, they are still shown as notifications
+            return false;
+        }
+    };
+    private final DeviceStateStore.Observer stateObserver = new DeviceStateStore.Observer() {
+        @Override
+        public void onDevicesChanged(@NonNull final Set<String> installationIds) {
+            adapter.onDevicesChanged(installationIds);
         }
     };
 
@@ -47,16 +67,35 @@ public class RegisteredDevicesActivity extends ActionBarActivity implements Regi
     @Override
     protected void onResume() {
         super.onResume();
+        QueryMetrics.getInstance().enterScreen(QueryMetrics.SCREEN_DEVICE_LIST);
         adapter.loadObjects();
-        registerReceiver(eventReceiver, Constants.EVENT_INTENT_FILTER);
+        DeviceRepository.getInstance().addListener(this);
+        PresenceEngine.getInstance().addListener(this);
+        DeviceStateStore.getInstance().subscribe(null, stateObserver);
+        DeviceRepository.getInstance().sync();
+        // Ends when the activity is paused
+        DeviceEventBus.getInstance().subscribe(this, DeviceEventBus.PRIORITY_DEVICE_LIST, null, eventSubscriber);
     }
 
     @Override
     protected void onPause() {
-        unregisterReceiver(eventReceiver);
+        DeviceRepository.getInstance().removeListener(this);
+        PresenceEngine.getInstance().removeListener(this);
+        DeviceStateStore.getInstance().unsubscribe(stateObserver);
         super.onPause();
     }
 
+    @Override
+    public void onDevicesChanged() {
+        adapter.loadObjects();
+    }
+
+    @Override
+    public void onPresenceChanged(@NonNull final Set<String> installationIds) {
+        adapter.onDevicesChanged(installationIds);
+    }
+
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.action_menu_main, menu);
@@ -75,8 +114,9 @@ public class RegisteredDevicesActivity extends ActionBarActivity implements Regi
     }
 
     @Override
-    public void onDeviceClicked(@NonNull final Installation installation) {
-        final Intent devicePageIntent = BlinkDeviceActivity.getDeviceActivityIntent(RegisteredDevicesActivity.this, BlinkDeviceActivity.class, installation.getInstallationId());
+    public void onDeviceClicked(@NonNull final String installationId) {
+        DeviceRepository.getInstance().prefetch(installationId);
+        final Intent devicePageIntent = BlinkDeviceActivity.getDeviceActivityIntent(RegisteredDevicesActivity.this, BlinkDeviceActivity.class, installationId);
         if (devicePageIntent != null) {
             startActivity(devicePageIntent);
         }
@@ -114,7 +154,8 @@ public class RegisteredDevicesActivity extends ActionBarActivity implements Regi
         public void onClick(final DialogInterface dialog, final int which) {
             if (which == AlertDialog.BUTTON_POSITIVE) {
                 ParseUser.logOut();
-                ParseQuery.clearAllCachedResults();
+                DeviceRepository.getInstance().clear();
+                DeviceEventBus.getInstance().clear();
 
                 // Open launch activity
                 final Intent intent = new Intent(RegisteredDevicesActivity.this, MainActivity.class);
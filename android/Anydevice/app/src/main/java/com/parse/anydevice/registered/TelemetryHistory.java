@@ -0,0 +1,175 @@
+package com.parse.anydevice.registered;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.parse.FindCallback;
+import com.parse.ParseException;
+import com.parse.anydevice.data.QueryExecutor;
+import com.parse.anydevice.data.QuerySpec;
+import com.parse.anydevice.models.Event;
+import com.parse.anydevice.models.Installation;
+import com.parse.anydevice.views.TelemetryChartView;
+import com.parse.anydevice.views.TelemetryDownsampler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The telemetry charted for each device, kept for the life of the process rather than by its screen, so a
+ * chart survives the screen being paused, rotated or opened again.
+ * <p/>
+ * The first time a device is charted its recent events are fetched once to fill the chart. Samples added
+ * before they arrive are held back and added after them, as a {@link TelemetryDownsampler} only takes
+ * samples in time order. Samples that aren't newer than the device's latest one are dropped, so charting
+ * the same event again on every resume is harmless. Must be used from the main thread.
+ */
+class TelemetryHistory {
+    private static final String TAG = TelemetryHistory.class.getSimpleName();
+    private static final String QUERY_EVENTS = "events";
+    private static final int MAX_DEVICES = 16;
+    private static final int SEED_EVENTS = 100;
+
+    private static final TelemetryHistory instance = new TelemetryHistory();
+
+    interface Levels {
+        /**
+         * @param event An event of the device
+         * @return The value to chart for it, or null if it isn't charted
+         */
+        @Nullable
+        Float getLevel(@NonNull final Event event);
+    }
+
+    interface Listener {
+        /**
+         * Called once the recent events of a device were added to its chart
+         */
+        void onSeeded(@NonNull final String installationId);
+    }
+
+    private final LruCache<String, Series> devices = new LruCache<>(MAX_DEVICES);
+    private final List<Listener> listeners = new ArrayList<>();
+
+    private TelemetryHistory() {}
+
+    static TelemetryHistory getInstance() {
+        return instance;
+    }
+
+    void addListener(@NonNull final Listener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    void removeListener(@NonNull final Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param installationId The UUID of the device's installation
+     * @return The samples charted for the device, to be drawn by a {@link TelemetryChartView}
+     */
+    @NonNull
+    TelemetryDownsampler getDownsampler(@NonNull final String installationId) {
+        return getSeries(installationId).downsampler;
+    }
+
+    /**
+     * Chart a reading of a device
+     *
+     * @param installationId The UUID of the device's installation
+     * @param time           Time of the reading in milliseconds
+     * @param value          The reading
+     * @return true if the chart changed, false if the reading was held back or not newer than the latest one
+     */
+    boolean add(@NonNull final String installationId, final long time, final float value) {
+        final Series series = getSeries(installationId);
+        if (!series.isSeeded) {
+            series.heldTimes.add(time);
+            series.heldValues.add(value);
+            return false;
+        }
+        return series.add(time, value);
+    }
+
+    /**
+     * Fill the chart of a device with its recent events, unless that happened already or is under way
+     *
+     * @param installation The device's installation
+     * @param levels       Turns events into readings
+     */
+    void seed(@NonNull final Installation installation, @NonNull final Levels levels) {
+        final String installationId = installation.getInstallationId();
+        final Series series = getSeries(installationId);
+        if (series.isSeeded || series.isSeeding) {
+            return;
+        }
+        series.isSeeding = true;
+        final QuerySpec<Event> spec = new QuerySpec<>(Event.class)
+                // Events name their installation by object id
+                .whereEqualTo(Event.INSTALLATION_ID, installation.getObjectId())
+                .select(Event.PROJECTION_DEVICE_DETAILS)
+                .orderByDescending(Event.CREATED_AT)
+                .setLimit(SEED_EVENTS)
+                .setName(QUERY_EVENTS);
+        QueryExecutor.find(spec, new FindCallback<Event>() {
+            @Override
+            public void done(final List<Event> events, final ParseException e) {
+                series.isSeeding = false;
+                if (e != null) {
+                    // Tried again the next time the device is charted
+                    Log.w(TAG, "Couldn't fetch recent events", e);
+                    return;
+                }
+                // Newest first, so added backwards
+                for (int i = events.size() - 1; i >= 0; i--) {
+                    final Event event = events.get(i);
+                    final Float level = levels.getLevel(event);
+                    if (level != null && event.getCreatedAt() != null) {
+                        series.add(event.getCreatedAt().getTime(), level);
+                    }
+                }
+                for (int i = 0; i < series.heldTimes.size(); i++) {
+                    series.add(series.heldTimes.get(i), series.heldValues.get(i));
+                }
+                series.heldTimes.clear();
+                series.heldValues.clear();
+                series.isSeeded = true;
+                for (Listener listener : new ArrayList<>(listeners)) {
+                    listener.onSeeded(installationId);
+                }
+            }
+        });
+    }
+
+    private Series getSeries(final String installationId) {
+        Series series = devices.get(installationId);
+        if (series == null) {
+            series = new Series();
+            devices.put(installationId, series);
+        }
+        return series;
+    }
+
+    private static class Series {
+        final TelemetryDownsampler downsampler = TelemetryChartView.createDownsampler();
+        final List<Long> heldTimes = new ArrayList<>();
+        final List<Float> heldValues = new ArrayList<>();
+        long latestTime = Long.MIN_VALUE;
+        boolean isSeeding;
+        boolean isSeeded;
+
+        boolean add(final long time, final float value) {
+            if (time <= latestTime) {
+                return false;
+            }
+            latestTime = time;
+            downsampler.add(time, value);
+            return true;
+        }
+    }
+}
@@ -5,18 +5,33 @@ import android.content.Context;
 import android.content.Intent;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 
 import com.parse.FindCallback;
 import com.parse.ParseException;
-import com.parse.ParseQuery;
-import com.parse.anydevice.app.Constants;
+import com.parse.anydevice.data.DeviceRepository;
 import com.parse.anydevice.models.Model;
+import com.parse.anydevice.util.ScanClassifier;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+/**
+ * Turns scan results into {@link NewDevice}s.
+ * <p/>
+ * Reading and classifying the scan results happens on a background thread, as busy places can have
+ * hundreds of access points; observers are notified on the main thread.
+ */
 class AccessPointBroadcastReceiver extends BroadcastReceiver {
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
     private final List<AccessPointObserver> observers = new ArrayList<>();
 
     public static interface AccessPointObserver {
@@ -26,42 +41,67 @@ class AccessPointBroadcastReceiver extends BroadcastReceiver {
     /**
      * When we receive a broadcast with action {@value WifiManager#SCAN_RESULTS_AVAILABLE_ACTION}
      * <p/>
-     * We request board Models from Parse.com and then pass the information for processing to {@link #notifyObservers(List, List)}
+     * We get the board Models from the {@link DeviceRepository} and then classify the scan results in the background
      */
     @Override
     public void onReceive(final Context context, final Intent intent) {
-        final WifiManager manager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
-        final List<ScanResult> results = manager.getScanResults();
-        final ParseQuery<Model> query = Model.getQuery();
-        query.findInBackground(new FindCallback<Model>() {
+        final WifiManager manager = (WifiManager) context.getApplicationContext().getSystemService(Context.WIFI_SERVICE);
+        DeviceRepository.getInstance().getModels(new FindCallback<Model>() {
             @Override
             public void done(final List<Model> models, final ParseException e) {
                 if (e == null) {
-                    notifyObservers(results, models);
+                    classify(manager, models);
                 }
             }
         });
     }
 
     /**
-     * Inform observers about the access points detected and provide the board models from server
+     * Read the scan results and pick out the boards on the executor, then notify the observers on the main thread
      *
-     * @param results The access points {@link ScanResult} detected
-     * @param models  List of {@link Model}s queried from Parse.com
+     * @param manager Used for reading the scan results
+     * @param models  List of {@link Model}s to match the boards against
      */
-    private void notifyObservers(final List<ScanResult> results, final List<Model> models) {
-        final List<NewDevice> newDevices = new ArrayList<>();
-        for (int i = 0; i < results.size(); i++) {
-            final ScanResult current = results.get(i);
-            if (Constants.isPlatformSupportedBySSID(current.SSID)) {
-                newDevices.add(new NewDevice(current, models));
+    private void classify(final WifiManager manager, final List<Model> models) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Map<String, Model> modelsByAppName = new HashMap<>();
+                for (Model model : models) {
+                    modelsByAppName.put(model.getAppName(), model);
+                }
+                final ScanClassifier<Model> classifier = new ScanClassifier<>(modelsByAppName);
+
+                final List<ScanResult> results = manager.getScanResults();
+                final List<NewDevice> newDevices = new ArrayList<>();
+                if (results != null) {
+                    for (int i = 0; i < results.size(); i++) {
+                        final ScanResult current = results.get(i);
+                        if (classifier.isSupported(current.SSID)) {
+                            newDevices.add(new NewDevice(current, classifier.match(current.SSID)));
+                        }
+                    }
+                }
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        notifyObservers(newDevices);
+                    }
+                });
             }
-        }
-        for (AccessPointObserver observer : observers) {
+        });
+    }
+
+    /**
+     * Inform observers about the devices detected
+     *
+     * @param newDevices The boards found by the scan
+     */
+    private void notifyObservers(final List<NewDevice> newDevices) {
+        for (AccessPointObserver observer : new ArrayList<>(observers)) {
             observer.receiveResults(newDevices);
         }
     }
-
     public void addObserver(@NonNull final AccessPointObserver observer) {
         if (!observers.contains(observer)) {
             observers.add(observer);
@@ -3,21 +3,44 @@ package com.parse.anydevice.unregistered;
 import android.content.Context;
 import android.content.IntentFilter;
 import android.net.wifi.WifiManager;
+import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Continuous discovery of boards by their access points.
+ * <p/>
+ * While running, the network is rescanned on an adaptive interval: it starts at {@link #MIN_SCAN_INTERVAL}
+ * and doubles up to {@link #MAX_SCAN_INTERVAL} for as long as scans find no new boards or lose none.
+ * Results are merged into {@link DiscoveredDevices}, which outlives the activity so that reopening the
+ * screen shows the last known boards straight away.
+ */
 class AccessPointDiscovery implements AccessPointBroadcastReceiver.AccessPointObserver {
     private final static String TAG = AccessPointDiscovery.class.getSimpleName();
+    private static final long MIN_SCAN_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+    private static final long MAX_SCAN_INTERVAL = TimeUnit.SECONDS.toMillis(60);
+
+    // Warm cache shared by all discoveries, only used from the main thread
+    private static final DiscoveredDevices discoveredDevices = new DiscoveredDevices();
 
     private final Context context;
     private final WifiManager wifiManager;
     private final AccessPointBroadcastReceiver wifiReceiver;
     private final Callback callback;
     private final IntentFilter intentFilter;
+    private final Handler handler = new Handler();
+    private final Runnable scanRunnable = new Runnable() {
+        @Override
+        public void run() {
+            wifiManager.startScan();
+        }
+    };
 
     private boolean running = false;
+    private long scanInterval = MIN_SCAN_INTERVAL;
 
     public interface Callback {
         void done(@NonNull final List<NewDevice> devices);
@@ -27,7 +50,7 @@ class AccessPointDiscovery implements AccessPointBroadcastReceiver.AccessPointOb
      * Observer that listens for changes in the detected networks
      *
      * @param context  Used for registering receivers
-     * @param callback Used for sending back the detected devices from the network scan
+     * @param callback Used for sending back the detected devices after every network scan
      */
     public AccessPointDiscovery(@NonNull final Context context, @NonNull final Callback callback) {
         this.context = context;
@@ -38,7 +61,15 @@ class AccessPointDiscovery implements AccessPointBroadcastReceiver.AccessPointOb
     }
 
     /**
-     * Begin scanning the network for access points
+     * @return The boards known from earlier scans, strongest signal first
+     */
+    @NonNull
+    public static List<NewDevice> getLastKnownDevices() {
+        return discoveredDevices.getDevices();
+    }
+
+    /**
+     * Begin scanning the network for access points, rescanning until stopped
      * <p/>
      * If already running, it will first stop the discovery
      * <p/>
@@ -54,6 +85,7 @@ class AccessPointDiscovery implements AccessPointBroadcastReceiver.AccessPointOb
         }
         wifiReceiver.addObserver(this);
         context.registerReceiver(wifiReceiver, intentFilter);
+        scanInterval = MIN_SCAN_INTERVAL;
         wifiManager.startScan();
         running = true;
     }
@@ -64,6 +96,7 @@ class AccessPointDiscovery implements AccessPointBroadcastReceiver.AccessPointOb
     public void stop() {
         Log.d(TAG, "stop discovery");
         if (running) {
+            handler.removeCallbacks(scanRunnable);
             wifiReceiver.removeObserver(this);
             context.unregisterReceiver(wifiReceiver);
             running = false;
@@ -75,13 +108,19 @@ class AccessPointDiscovery implements AccessPointBroadcastReceiver.AccessPointOb
     }
 
     /**
-     * Used to pass back devices that have been by their access point
+     * Merge the devices found by a scan, pass back the ranked list and schedule the next scan
      *
-     * @param newDevices The list of {@link NewDevice} to pass down
+     * @param newDevices The list of {@link NewDevice} found by the scan
      */
     @Override
     public void receiveResults(@NonNull final List<NewDevice> newDevices) {
-        callback.done(newDevices);
-        stop();
+        if (!running) {
+            return;
+        }
+        final boolean changed = discoveredDevices.merge(newDevices);
+        callback.done(discoveredDevices.getDevices());
+        scanInterval = changed ? MIN_SCAN_INTERVAL : Math.min(scanInterval * 2, MAX_SCAN_INTERVAL);
+        handler.removeCallbacks(scanRunnable);
+        handler.postDelayed(scanRunnable, scanInterval);
     }
 }
@@ -27,9 +27,13 @@ import com.parse.FindCallback;
 import com.parse.GetCallback;
 import com.parse.ParseACL;
 import com.parse.ParseException;
-import com.parse.ParseQuery;
 import com.parse.ParseUser;
 import com.parse.anydevice.R;
+import com.parse.anydevice.data.DeviceRepository;
+import com.parse.anydevice.data.Outbox;
+import com.parse.anydevice.data.QueryExecutor;
+import com.parse.anydevice.data.QueryMetrics;
+import com.parse.anydevice.data.QuerySpec;
 import com.parse.anydevice.models.InfrastructureKey;
 import com.parse.anydevice.models.Model;
 import com.parse.anydevice.provisioning.DeviceConfig;
@@ -72,6 +76,7 @@ public class AddDeviceDialogFragment extends DialogFragment implements Provision
     @Override
     public void onCreate(final Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        QueryMetrics.getInstance().enterScreen(QueryMetrics.SCREEN_ADD_DEVICE);
         final Bundle args = getArguments();
         if (null != args) {
             final String bssid = args.getString(ARGS_BSSID);
@@ -79,7 +84,7 @@ public class AddDeviceDialogFragment extends DialogFragment implements Provision
             final String modelAppName = args.getString(ARGS_APP_NAME);
             final String defaultDeviceName = String.format(getResources().getString(R.string.device_title_format), ParseUser.getCurrentUser().getUsername(), args.getString(ARGS_BOARD_TYPE));
             deviceApConfig = new DeviceApConfig(ssid, bssid, modelAppName, defaultDeviceName);
-            Model.getQuery().findInBackground(new FindCallback<Model>() {
+            DeviceRepository.getInstance().getModels(new FindCallback<Model>() {
                 @Override
                 public void done(final List<Model> models, final ParseException e) {
                     if (e == null) {
@@ -285,14 +290,15 @@ public class AddDeviceDialogFragment extends DialogFragment implements Provision
                     key.setBssid(currentBssid);
                     key.setKey(password);
                     key.setSecurity(securityType);
-                    key.saveInBackground();
+                    Outbox.getInstance().enqueueSave(key, null, InfrastructureKey.SSID, InfrastructureKey.BSSID,
+                            InfrastructureKey.KEY, InfrastructureKey.SECURITY);
                 }
             } else {
                 // even if we stored the object before we might need to update
                 // password and security on the server in case it changed.
                 restoredNetwork.setKey(password);
                 restoredNetwork.setSecurity(securityType);
-                restoredNetwork.saveInBackground();
+                Outbox.getInstance().enqueueSave(restoredNetwork, null, InfrastructureKey.KEY, InfrastructureKey.SECURITY);
             }
         }
     }
@@ -327,10 +333,10 @@ public class AddDeviceDialogFragment extends DialogFragment implements Provision
      * Queries Parse to try to obtain old Wi-Fi information that it will populate the fields with
      */
     private void populateInfrastructureFields() {
-        final ParseQuery<InfrastructureKey> query = InfrastructureKey.getQuery();
-        query.whereEqualTo(InfrastructureKey.SSID, currentSsid);
-        query.whereEqualTo(InfrastructureKey.BSSID, currentBssid);
-        query.getFirstInBackground(new GetCallback<InfrastructureKey>() {
+        final QuerySpec<InfrastructureKey> query = InfrastructureKey.getQuery()
+                .whereEqualTo(InfrastructureKey.SSID, currentSsid)
+                .whereEqualTo(InfrastructureKey.BSSID, currentBssid);
+        QueryExecutor.getFirst(query, new GetCallback<InfrastructureKey>() {
             @Override
             public void done(final InfrastructureKey infrastructureKey, final ParseException e) {
                 if (e == null) {
@@ -0,0 +1,89 @@
+package com.parse.anydevice.unregistered;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Boards seen by recent scans, merged by BSSID and ranked by signal level.
+ * <p/>
+ * A board stays listed until it has been missing from {@link #MAX_MISSED_SCANS} scans in a row, so a
+ * single scan that misses it doesn't make it flicker out of the list.
+ */
+class DiscoveredDevices {
+    static final int MAX_MISSED_SCANS = 3;
+
+    private static final Comparator<NewDevice> BY_SIGNAL = new Comparator<NewDevice>() {
+        @Override
+        public int compare(final NewDevice lhs, final NewDevice rhs) {
+            if (lhs.getLevel() != rhs.getLevel()) {
+                return lhs.getLevel() > rhs.getLevel() ? -1 : 1;
+            }
+            return lhs.getBssid().compareTo(rhs.getBssid());
+        }
+    };
+
+    private final Map<String, Sighting> sightings = new HashMap<>();
+    private List<NewDevice> ranked = Collections.emptyList();
+
+    /**
+     * Merge the boards found by one scan
+     *
+     * @param scan Boards found by the scan
+     * @return true if the set of listed boards changed
+     */
+    boolean merge(@NonNull final List<NewDevice> scan) {
+        boolean changed = false;
+        for (Sighting sighting : sightings.values()) {
+            sighting.missedScans++;
+        }
+        for (NewDevice device : scan) {
+            final Sighting sighting = sightings.get(device.getBssid());
+            if (sighting == null) {
+                sightings.put(device.getBssid(), new Sighting(device));
+                changed = true;
+            } else {
+                sighting.device = device;
+                sighting.missedScans = 0;
+            }
+        }
+        final Iterator<Sighting> iterator = sightings.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().missedScans >= MAX_MISSED_SCANS) {
+                iterator.remove();
+                changed = true;
+            }
+        }
+
+        final List<NewDevice> devices = new ArrayList<>(sightings.size());
+        for (Sighting sighting : sightings.values()) {
+            devices.add(sighting.device);
+        }
+        Collections.sort(devices, BY_SIGNAL);
+        ranked = Collections.unmodifiableList(devices);
+        return changed;
+    }
+
+    /**
+     * @return The listed boards, strongest signal first
+     */
+    @NonNull
+    List<NewDevice> getDevices() {
+        return ranked;
+    }
+
+    private static class Sighting {
+        private NewDevice device;
+        private int missedScans;
+
+        Sighting(final NewDevice device) {
+            this.device = device;
+        }
+    }
+}
@@ -2,11 +2,10 @@ package com.parse.anydevice.unregistered;
 
 import android.net.wifi.ScanResult;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.parse.anydevice.models.Model;
 
-import java.util.List;
-
 /**
  * Model representing a device that can be provisioned
  */
@@ -14,34 +13,20 @@ public class NewDevice {
     private final ScanResult wifiAP;
 
     private final String title;
-    private String boardType;
-    private Model model;
+    private final String boardType;
+    private final Model model;
     private final String bssid;
 
-    public NewDevice(@NonNull final ScanResult scanResult, @NonNull final List<Model> models) {
+    /**
+     * @param scanResult The board's access point
+     * @param model      The {@link Model} the board runs, or null if unknown
+     */
+    public NewDevice(@NonNull final ScanResult scanResult, @Nullable final Model model) {
         wifiAP = scanResult;
         title = wifiAP.SSID;
         bssid = wifiAP.BSSID;
-        setupModelName(models);
-    }
-
-    /**
-     * Extract the board model name from the SSID and assign a corresponding model
-     *
-     * @param models List of {@link Model}s to try matching the model name against
-     */
-    private void setupModelName(@NonNull final List<Model> models) {
-        final int first = wifiAP.SSID.indexOf("-");
-        final int last = wifiAP.SSID.lastIndexOf("-");
-        final String modelName = wifiAP.SSID.substring(first + 1, last);
-        if (!modelName.isEmpty()) {
-            for (Model foundModel : models) {
-                if (modelName.equals(foundModel.getAppName())) {
-                    model = foundModel;
-                    boardType = model.getBoardType();
-                }
-            }
-        }
+        this.model = model;
+        boardType = model != null ? model.getBoardType() : null;
     }
 
     public String getTitle() {
@@ -59,4 +44,11 @@ public class NewDevice {
     public String getBssid() {
         return bssid;
     }
+
+    /**
+     * @return Signal level of the access point in dBm
+     */
+    public int getLevel() {
+        return wifiAP.level;
+    }
 }
@@ -1,28 +1,27 @@
 package com.parse.anydevice.unregistered;
 
 import android.support.annotation.NonNull;
-import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
 import com.parse.anydevice.R;
+import com.parse.anydevice.views.DiffingAdapter;
 import com.parse.anydevice.views.NewDeviceItemView;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 /**
- * Adapter for available devices
+ * Adapter for available devices, keyed by BSSID
  */
-class NewDeviceListAdapter extends RecyclerView.Adapter<NewDeviceListAdapter.NewDeviceViewHolder> {
+class NewDeviceListAdapter extends DiffingAdapter<NewDevice, NewDeviceListAdapter.NewDeviceViewHolder> {
 
     public static interface OnDeviceAddClickListener {
         void onAddClick(@NonNull final NewDevice device);
     }
 
-    private final List<NewDevice> devices = Collections.synchronizedList(new ArrayList<NewDevice>());
     private OnDeviceAddClickListener addDeviceClickListener;
 
     @Override
@@ -33,18 +32,27 @@ class NewDeviceListAdapter extends RecyclerView.Adapter<NewDeviceListAdapter.New
 
     @Override
     public void onBindViewHolder(final NewDeviceViewHolder holder, final int position) {
-        holder.setNewDevice(devices.get(position));
+        holder.setNewDevice(getItem(position));
     }
 
+    @NonNull
     @Override
-    public int getItemCount() {
-        return devices.size();
+    protected String getKey(@NonNull final NewDevice device) {
+        return device.getBssid();
     }
 
+    @Override
+    protected Object getContent(@NonNull final NewDevice device) {
+        return Arrays.asList(device.getTitle(), device.getBoardType());
+    }
+
+    /**
+     * Show the given boards; only rows that were added, removed, moved or changed are touched
+     *
+     * @param newDevices The boards to show, in order
+     */
     public void setDevices(@NonNull final List<NewDevice> newDevices) {
-        devices.clear();
-        devices.addAll(newDevices);
-        notifyDataSetChanged();
+        submitList(newDevices);
     }
 
     public void setOnDeviceAddClickListener(@NonNull final OnDeviceAddClickListener listener) {
@@ -52,8 +60,7 @@ class NewDeviceListAdapter extends RecyclerView.Adapter<NewDeviceListAdapter.New
     }
 
     public void clear() {
-        devices.clear();
-        notifyDataSetChanged();
+        submitList(Collections.<NewDevice>emptyList());
     }
 
     class NewDeviceViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
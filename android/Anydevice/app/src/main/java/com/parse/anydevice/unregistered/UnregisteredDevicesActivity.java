@@ -35,6 +35,11 @@ public class UnregisteredDevicesActivity extends ActionBarActivity implements Ne
         discovery = new AccessPointDiscovery(this, this);
         adapter = new NewDeviceListAdapter();
         setupList();
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
         startDiscovery();
     }
 
@@ -42,7 +47,6 @@ public class UnregisteredDevicesActivity extends ActionBarActivity implements Ne
     protected void onStop() {
         if (discovery.isRunning()) {
             discovery.stop();
-            emptyStateView.setupNoResultsState();
         }
         super.onStop();
     }
@@ -75,10 +79,9 @@ public class UnregisteredDevicesActivity extends ActionBarActivity implements Ne
 
     @Override
     public void done(@NonNull final List<NewDevice> devices) {
+        adapter.setDevices(devices);
         if (devices.isEmpty()) {
             emptyStateView.setupNoResultsState();
-        } else {
-            adapter.setDevices(devices);
         }
     }
 
@@ -104,11 +107,14 @@ public class UnregisteredDevicesActivity extends ActionBarActivity implements Ne
     }
 
     /**
-     * Start wifi scan to discover devices
+     * Start wifi scans to discover devices, showing the boards found earlier while the first scan runs
      */
     private void startDiscovery() {
-        adapter.clear();
-        emptyStateView.setupLoadingState();
+        final List<NewDevice> lastKnownDevices = AccessPointDiscovery.getLastKnownDevices();
+        adapter.setDevices(lastKnownDevices);
+        if (lastKnownDevices.isEmpty()) {
+            emptyStateView.setupLoadingState();
+        }
         discovery.start();
     }
 
@@ -0,0 +1,41 @@
+package com.parse.anydevice.util;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+/**
+ * Builds the NAME=VALUE &-delimited string of parameters for sending to a board.
+ * <p/>
+ * Plain Java, so it can be benchmarked on the JVM.
+ */
+public class FormEncoder {
+    private static final String UTF8_ENCODING = "UTF-8";
+
+    private final StringBuilder result = new StringBuilder();
+
+    /**
+     * Append a parameter, URL encoding its name and value
+     *
+     * @param name  Name of the parameter
+     * @param value Value of the parameter
+     * @return This encoder
+     * @throws UnsupportedEncodingException
+     */
+    public FormEncoder add(final String name, final String value) throws UnsupportedEncodingException {
+        if (result.length() > 0) {
+            result.append('&');
+        }
+        result.append(URLEncoder.encode(name, UTF8_ENCODING));
+        result.append('=');
+        result.append(URLEncoder.encode(value, UTF8_ENCODING));
+        return this;
+    }
+
+    /**
+     * @return The constructed string
+     */
+    @Override
+    public String toString() {
+        return result.toString();
+    }
+}
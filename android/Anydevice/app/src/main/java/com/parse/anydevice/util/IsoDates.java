@@ -0,0 +1,30 @@
+package com.parse.anydevice.util;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.SimpleTimeZone;
+
+/**
+ * Parses the ISO 8601 UTC timestamps Parse sends, e.g. "2015-03-24T18:23:06.412Z".
+ * <p/>
+ * Plain Java, so it can be benchmarked on the JVM.
+ */
+public final class IsoDates {
+    private static final String FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+
+    private IsoDates() {}
+
+    /**
+     * @param date The timestamp
+     * @return The parsed date
+     * @throws ParseException If the timestamp is malformed
+     */
+    public static Date parse(final String date) throws ParseException {
+        final DateFormat sdf = new SimpleDateFormat(FORMAT, Locale.US);
+        sdf.setTimeZone(new SimpleTimeZone(0, "GMT"));
+        return sdf.parse(date);
+    }
+}
@@ -0,0 +1,16 @@
+package com.parse.anydevice.util;
+
+/**
+ * Keys the app selects in projected reads, i.e. reads whose objects are used once and never pinned.
+ * <p/>
+ * Installations and models aren't projected, as they are pinned into the local datastore that every screen
+ * reads. Plain strings, so the benchmarks send the same keys as the app.
+ */
+public final class ProjectedKeys {
+    /**
+     * Recent events charted on the details screen
+     */
+    public static final String[] DEVICE_DETAILS_EVENTS = {"value"};
+
+    private ProjectedKeys() {}
+}
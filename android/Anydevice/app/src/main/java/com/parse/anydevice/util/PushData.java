@@ -0,0 +1,196 @@
+package com.parse.anydevice.util;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.text.ParseException;
+
+/**
+ * Fields of a push sent by the cloud code, decoded in a single pass with a streaming {@link JsonReader}.
+ * <p/>
+ * Uses nothing from Android but its JSON streaming classes, so it can be benchmarked on the JVM.
+ */
+public final class PushData {
+    public static final long NO_DATE = -1;
+
+    private String action;
+    private String userSessionId;
+    private String installationId;
+    private String alert;
+    private String eventObjectId;
+    private String eventInstallationId;
+    private String eventValue;
+    private long eventCreatedAt = NO_DATE;
+
+    private PushData() {}
+
+    /**
+     * Decode the push data
+     *
+     * @param json The push data as sent by the cloud code
+     * @return The decoded fields; absent ones are null, or {@link #NO_DATE} for the event's creation time
+     * @throws IOException           If the JSON is malformed
+     * @throws IllegalStateException If the JSON doesn't have the expected structure
+     * @throws ParseException        If the event's creation time is malformed
+     */
+    public static PushData decode(final String json) throws IOException, ParseException {
+        final PushData data = new PushData();
+        final JsonReader reader = new JsonReader(new StringReader(json));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "action":
+                        data.action = nextString(reader);
+                        break;
+                    case "userSessionId":
+                        data.userSessionId = nextString(reader);
+                        break;
+                    case "installationId":
+                        data.installationId = nextString(reader);
+                        break;
+                    case "alert":
+                        data.alert = nextString(reader);
+                        break;
+                    case "event":
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                            break;
+                        }
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "objectId":
+                                    data.eventObjectId = nextString(reader);
+                                    break;
+                                case "installationId":
+                                    data.eventInstallationId = nextString(reader);
+                                    break;
+                                case "value":
+                                    data.eventValue = readValue(reader);
+                                    break;
+                                case "createdAt":
+                                    final String createdAt = nextString(reader);
+                                    data.eventCreatedAt = createdAt == null ? NO_DATE : IsoDates.parse(createdAt).getTime();
+                                    break;
+                                default:
+                                    reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return data;
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getUserSessionId() {
+        return userSessionId;
+    }
+
+    public String getInstallationId() {
+        return installationId;
+    }
+
+    public String getAlert() {
+        return alert;
+    }
+
+    public String getEventObjectId() {
+        return eventObjectId;
+    }
+
+    public String getEventInstallationId() {
+        return eventInstallationId;
+    }
+
+    /**
+     * @return The event's value as JSON text
+     */
+    public String getEventValue() {
+        return eventValue;
+    }
+
+    /**
+     * @return Creation time of the event in milliseconds since the epoch, or {@link #NO_DATE}
+     */
+    public long getEventCreatedAt() {
+        return eventCreatedAt;
+    }
+
+    private static String nextString(final JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * Copy the next value as JSON text. Values sent as strings are returned as they are.
+     */
+    private static String readValue(final JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.STRING) {
+            return reader.nextString();
+        }
+        final StringWriter out = new StringWriter();
+        final JsonWriter writer = new JsonWriter(out);
+        copyValue(reader, writer);
+        writer.close();
+        return out.toString();
+    }
+
+    private static void copyValue(final JsonReader reader, final JsonWriter writer) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                writer.beginObject();
+                while (reader.hasNext()) {
+                    writer.name(reader.nextName());
+                    copyValue(reader, writer);
+                }
+                reader.endObject();
+                writer.endObject();
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) {
+                    copyValue(reader, writer);
+                }
+                reader.endArray();
+                writer.endArray();
+                break;
+            case STRING:
+                writer.value(reader.nextString());
+                break;
+            case NUMBER:
+                writer.value(new BigDecimal(reader.nextString()));
+                break;
+            case BOOLEAN:
+                writer.value(reader.nextBoolean());
+                break;
+            default:
+                reader.nextNull();
+                writer.nullValue();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.parse.anydevice.util;
+
+import java.util.Map;
+
+/**
+ * Classifies access points found by a scan: whether they belong to a supported board and which model the
+ * board runs, going by the app name in the SSID (see {@link Ssids#getAppName(String)}).
+ * <p/>
+ * Models are indexed by app name once per scan, so each access point costs a map lookup rather than a
+ * pass over every model. Only works on strings, so it is safe to use off the main thread and can be
+ * benchmarked on the JVM.
+ *
+ * @param <M> Type of the models, usually the app's Model
+ */
+public class ScanClassifier<M> {
+    private final Map<String, M> modelsByAppName;
+
+    /**
+     * @param modelsByAppName Models to match against, by app name
+     */
+    public ScanClassifier(final Map<String, M> modelsByAppName) {
+        this.modelsByAppName = modelsByAppName;
+    }
+
+    /**
+     * @param ssid SSID of the access point
+     * @return true if the access point is a supported board
+     */
+    public boolean isSupported(final String ssid) {
+        return ssid != null && Ssids.isPlatformSupported(ssid);
+    }
+
+    /**
+     * @param ssid SSID of a supported board
+     * @return The model the board runs, or null if it is unknown
+     */
+    public M match(final String ssid) {
+        final String appName = Ssids.getAppName(ssid);
+        return appName == null ? null : modelsByAppName.get(appName);
+    }
+}
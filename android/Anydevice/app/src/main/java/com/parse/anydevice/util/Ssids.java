@@ -0,0 +1,65 @@
+package com.parse.anydevice.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What the SSID of a board's access point tells about it, e.g. "TL04-blink-1a2b" is a CC3200 running "blink".
+ * <p/>
+ * Plain Java, so it can be benchmarked on the JVM.
+ */
+public final class Ssids {
+    public static final String PLATFORM_CC3200 = "CC3200";
+
+    private static final Map<String, String> PLATFORM_SSID_MAP = Collections.unmodifiableMap(
+            new HashMap<String, String>() {{
+                put("TL04-", PLATFORM_CC3200);
+            }});
+
+    private Ssids() {}
+
+    /**
+     * Return true if the SSID has a prefix that represents a supported application.
+     *
+     * @param ssid SSID of device access point
+     * @return true if SSID is supported
+     * @see #PLATFORM_SSID_MAP
+     */
+    public static boolean isPlatformSupported(final String ssid) {
+        final String prefix = getPrefix(ssid);
+        return prefix != null && PLATFORM_SSID_MAP.containsKey(prefix);
+    }
+
+    /**
+     * @param ssid SSID of device access point
+     * @return The board's platform, e.g. {@link #PLATFORM_CC3200}, or null if it isn't supported
+     */
+    public static String getPlatform(final String ssid) {
+        return PLATFORM_SSID_MAP.get(getPrefix(ssid));
+    }
+
+    /**
+     * @param ssid SSID of device access point
+     * @return Everything up to and including the first dash, or null if there is none
+     */
+    public static String getPrefix(final String ssid) {
+        final int index = ssid.indexOf('-');
+        return index >= 0 ? ssid.substring(0, index + 1) : null;
+    }
+
+    /**
+     * Extract the app name between the first and last dash of the SSID
+     *
+     * @param ssid SSID of a board
+     * @return The app name, or null if the SSID doesn't have one
+     */
+    public static String getAppName(final String ssid) {
+        final int first = ssid.indexOf('-');
+        final int last = ssid.lastIndexOf('-');
+        if (first < 0 || last <= first + 1) {
+            return null;
+        }
+        return ssid.substring(first + 1, last);
+    }
+}
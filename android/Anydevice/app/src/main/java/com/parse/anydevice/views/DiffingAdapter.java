@@ -0,0 +1,353 @@
+package com.parse.anydevice.views;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Base adapter for lists that are replaced as a whole but mostly stay the same between updates.
+ * <p/>
+ * Every item has a stable key (e.g. an installation UUID or a BSSID), which also gives it a stable
+ * item id, and a snapshot of the content its row shows. {@link #submitList(List)} compares the new list
+ * with the shown one on a background thread and then dispatches only the inserts, removes, moves and
+ * changes needed to get from one to the other, so untouched rows keep their views and everything else
+ * animates into place. Items with the same key but different content are rebound with the payload from
+ * {@link #getChangePayload(Object, Object)}, which lets a subclass update part of a row.
+ * <p/>
+ * Must be used from the main thread.
+ *
+ * @param <T>  Type of the items
+ * @param <VH> Type of the view holders
+ */
+public abstract class DiffingAdapter<T, VH extends RecyclerView.ViewHolder> extends RecyclerView.Adapter<VH> {
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, Long> itemIds = new HashMap<>();
+    private long nextItemId;
+    private List<T> items = Collections.emptyList();
+    private List<String> keys = Collections.emptyList();
+    private List<Object> contents = Collections.emptyList();
+    // Incremented on every submit so that diffs against an outdated list are dropped
+    private int generation;
+
+    protected DiffingAdapter() {
+        setHasStableIds(true);
+    }
+
+    /**
+     * @param item An item of the list
+     * @return Key that identifies the item across updates; keys must be unique within a list
+     */
+    @NonNull
+    protected abstract String getKey(@NonNull final T item);
+
+    /**
+     * Take a snapshot of what the row of an item shows. Snapshots are compared with
+     * {@link Object#equals(Object)} to find changed rows, so they must not change afterwards.
+     *
+     * @param item An item of the list
+     * @return Value object describing the row, may be null
+     */
+    @Nullable
+    protected abstract Object getContent(@NonNull final T item);
+
+    /**
+     * Describe a change to the row of an item, so it can be partially rebound. Called on a background thread.
+     *
+     * @param oldContent Snapshot of the row as shown
+     * @param newContent Snapshot of the row to show
+     * @return Payload for {@link #onBindViewHolder(RecyclerView.ViewHolder, int, List)}, or null to rebind the whole row
+     */
+    @Nullable
+    protected Object getChangePayload(@Nullable final Object oldContent, @Nullable final Object newContent) {
+        return null;
+    }
+
+    @NonNull
+    public T getItem(final int position) {
+        return items.get(position);
+    }
+
+    /**
+     * @return The items shown, which don't include submitted lists that haven't been applied yet
+     */
+    @NonNull
+    public List<T> getItems() {
+        return items;
+    }
+
+    @Override
+    public int getItemCount() {
+        return items.size();
+    }
+
+    @Override
+    public long getItemId(final int position) {
+        return itemIds.get(keys.get(position));
+    }
+
+    /**
+     * Rebind the row of an item whose content changed in place, if its snapshot differs from the shown one
+     *
+     * @param position Position of the item
+     */
+    public void refreshItem(final int position) {
+        final Object oldContent = contents.get(position);
+        final Object newContent = getContent(items.get(position));
+        if (!equal(oldContent, newContent)) {
+            // Copied, as a diff running in the background may still be reading the shown snapshots
+            contents = new ArrayList<>(contents);
+            contents.set(position, newContent);
+            notifyItemChanged(position, getChangePayload(oldContent, newContent));
+        }
+    }
+
+    /**
+     * Replace an item with a new version of it, e.g. an immutable snapshot taken after its data changed.
+     * Its row is only rebound if the new snapshot differs from the shown one.
+     *
+     * @param position Position of the item
+     * @param item     The new version, with the same key
+     */
+    public void replaceItem(final int position, @NonNull final T item) {
+        final List<T> newItems = new ArrayList<>(items);
+        newItems.set(position, item);
+        items = Collections.unmodifiableList(newItems);
+        refreshItem(position);
+    }
+
+    /**
+     * Show a new list, see {@link #submitList(List, Runnable)}
+     */
+    public void submitList(@NonNull final List<T> newItems) {
+        submitList(newItems, null);
+    }
+
+    /**
+     * Show a new list. The difference to the shown list is computed in the background and applied on the
+     * main thread, unless another list is submitted first. Of several items with the same key only the
+     * first is kept.
+     *
+     * @param newItems  The items to show, in order
+     * @param onApplied Run once the list is shown; not run if a later list replaced it first
+     */
+    public void submitList(@NonNull final List<T> newItems, @Nullable final Runnable onApplied) {
+        final int submitGeneration = ++generation;
+        final List<T> newItemList = new ArrayList<>(newItems.size());
+        final List<String> newKeys = new ArrayList<>(newItems.size());
+        final List<Object> newContents = new ArrayList<>(newItems.size());
+        final Set<String> seen = new HashSet<>();
+        for (T item : newItems) {
+            final String key = getKey(item);
+            if (seen.add(key)) {
+                newItemList.add(item);
+                newKeys.add(key);
+                newContents.add(getContent(item));
+            }
+        }
+        final List<String> oldKeys = keys;
+        final List<Object> oldContents = contents;
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Update> updates = diff(oldKeys, oldContents, newKeys, newContents);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (submitGeneration != generation) {
+                            return;
+                        }
+                        apply(newItemList, newKeys, newContents, updates);
+                        if (onApplied != null) {
+                            onApplied.run();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void apply(final List<T> newItems, final List<String> newKeys, final List<Object> newContents, final List<Update> updates) {
+        items = Collections.unmodifiableList(newItems);
+        keys = newKeys;
+        contents = newContents;
+        itemIds.keySet().retainAll(new HashSet<>(newKeys));
+        for (String key : newKeys) {
+            if (!itemIds.containsKey(key)) {
+                itemIds.put(key, nextItemId++);
+            }
+        }
+
+        for (Update update : updates) {
+            switch (update.type) {
+                case Update.REMOVE:
+                    notifyItemRangeRemoved(update.position, update.count);
+                    break;
+                case Update.INSERT:
+                    notifyItemRangeInserted(update.position, update.count);
+                    break;
+                case Update.MOVE:
+                    notifyItemMoved(update.position, update.toPosition);
+                    break;
+                case Update.CHANGE:
+                    notifyItemRangeChanged(update.position, update.count, update.payload);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Work out the updates that turn the old list into the new one.
+     * <p/>
+     * Removed items go first, from the end so positions stay valid. The retained items that can stay
+     * where they are form the longest run that is already in the new order; every other retained item is
+     * moved, and every new item inserted, right after the item that precedes it in the new list. That
+     * needs the fewest moves possible. Finally rows whose content differs are changed at their new position.
+     */
+    private List<Update> diff(final List<String> oldKeys, final List<Object> oldContents,
+                              final List<String> newKeys, final List<Object> newContents) {
+        final List<Update> updates = new ArrayList<>();
+        final Map<String, Integer> newPositions = new HashMap<>();
+        for (int i = 0; i < newKeys.size(); i++) {
+            newPositions.put(newKeys.get(i), i);
+        }
+
+        final List<String> working = new ArrayList<>(oldKeys);
+        final Map<String, Object> retainedContents = new HashMap<>();
+        for (int i = working.size() - 1; i >= 0; i--) {
+            final String key = working.get(i);
+            if (newPositions.containsKey(key)) {
+                retainedContents.put(key, oldContents.get(i));
+                continue;
+            }
+            working.remove(i);
+            final Update last = updates.isEmpty() ? null : updates.get(updates.size() - 1);
+            if (last != null && last.type == Update.REMOVE && last.position == i + 1) {
+                last.position = i;
+                last.count++;
+            } else {
+                updates.add(new Update(Update.REMOVE, i, 1));
+            }
+        }
+
+        final Set<String> stable = findInOrder(working, newPositions);
+        for (int i = 0; i < newKeys.size(); i++) {
+            final String key = newKeys.get(i);
+            if (stable.contains(key)) {
+                continue;
+            }
+            final int from = retainedContents.containsKey(key) ? working.indexOf(key) : -1;
+            if (from >= 0) {
+                working.remove(from);
+            }
+            final int to = i == 0 ? 0 : working.indexOf(newKeys.get(i - 1)) + 1;
+            working.add(to, key);
+            if (from >= 0) {
+                if (from != to) {
+                    final Update move = new Update(Update.MOVE, from, 1);
+                    move.toPosition = to;
+                    updates.add(move);
+                }
+                continue;
+            }
+            final Update last = updates.isEmpty() ? null : updates.get(updates.size() - 1);
+            if (last != null && last.type == Update.INSERT && last.position + last.count == to) {
+                last.count++;
+            } else {
+                updates.add(new Update(Update.INSERT, to, 1));
+            }
+        }
+
+        Update change = null;
+        for (int i = 0; i < newKeys.size(); i++) {
+            final String key = newKeys.get(i);
+            final Object newContent = newContents.get(i);
+            if (!retainedContents.containsKey(key) || equal(retainedContents.get(key), newContent)) {
+                change = null;
+                continue;
+            }
+            final Object payload = getChangePayload(retainedContents.get(key), newContent);
+            if (change != null && equal(change.payload, payload)) {
+                change.count++;
+            } else {
+                change = new Update(Update.CHANGE, i, 1);
+                change.payload = payload;
+                updates.add(change);
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * Find the largest set of keys whose order already matches the new list (longest increasing subsequence
+     * of their new positions)
+     *
+     * @param keys         Retained keys in their old order
+     * @param newPositions Position of every key in the new list
+     * @return Keys that don't have to move
+     */
+    private static Set<String> findInOrder(final List<String> keys, final Map<String, Integer> newPositions) {
+        final int size = keys.size();
+        // tails[k] is the index of the smallest last element of an increasing run of length k + 1
+        final int[] tails = new int[size];
+        final int[] previous = new int[size];
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            final int position = newPositions.get(keys.get(i));
+            int low = 0, high = length;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (newPositions.get(keys.get(tails[middle])) < position) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        final Set<String> inOrder = new HashSet<>();
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            inOrder.add(keys.get(i));
+        }
+        return inOrder;
+    }
+
+    private static boolean equal(final Object a, final Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static class Update {
+        static final int REMOVE = 0, INSERT = 1, MOVE = 2, CHANGE = 3;
+
+        final int type;
+        int position;
+        int count;
+        int toPosition;
+        Object payload;
+
+        Update(final int type, final int position, final int count) {
+            this.type = type;
+            this.position = position;
+            this.count = count;
+        }
+    }
+}
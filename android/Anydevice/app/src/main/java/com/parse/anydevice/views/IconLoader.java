@@ -0,0 +1,260 @@
+package com.parse.anydevice.views;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.NonNull;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads small images, such as board icons, from their URL into image views.
+ * <p/>
+ * Lists can bind an icon from a plain URL instead of holding on to a ParseFile. Every view remembers the URL
+ * it was last asked to show, so an icon arriving after its view was rebound to another row is not shown there.
+ * Downloaded files are kept in the cache directory, so icons aren't downloaded again on every start, and are
+ * decoded at about the size of the view. Decoded icons are kept in memory up to a budget in bytes.
+ * Must be used from the main thread.
+ */
+public class IconLoader {
+    private static final String TAG = IconLoader.class.getSimpleName();
+    private static final String DIRECTORY = "icons";
+    private static final int MAX_MEMORY_BYTES = (int) Math.min(Runtime.getRuntime().maxMemory() / 32, 4 * 1024 * 1024);
+    private static final long MAX_DISK_BYTES = 4 * 1024 * 1024;
+    // Used while a view has neither a fixed size nor been laid out
+    private static final int DEFAULT_SIZE = 256;
+
+    private static IconLoader instance;
+
+    private final File directory;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final LruCache<String, Bitmap> icons = new LruCache<String, Bitmap>(MAX_MEMORY_BYTES) {
+        @Override
+        protected int sizeOf(final String key, final Bitmap bitmap) {
+            return bitmap.getByteCount();
+        }
+    };
+    private final Map<ImageView, String> requested = new WeakHashMap<>();
+
+    private IconLoader(@NonNull final Context context) {
+        directory = new File(context.getCacheDir(), DIRECTORY);
+    }
+
+    /**
+     * @param context Any context, only its cache directory is kept
+     */
+    public static void initialize(@NonNull final Context context) {
+        instance = new IconLoader(context);
+    }
+
+    public static IconLoader getInstance() {
+        return instance;
+    }
+
+    /**
+     * Show an icon, or the placeholder until it is loaded
+     *
+     * @param url         URL of the icon, null for the placeholder only
+     * @param imageView   View to show it in
+     * @param placeholder Shown while loading and if the icon can't be loaded
+     */
+    public void load(final String url, @NonNull final ImageView imageView, @DrawableRes final int placeholder) {
+        final int width = getTargetSize(imageView.getLayoutParams() != null ? imageView.getLayoutParams().width : 0,
+                imageView.getWidth());
+        final int height = getTargetSize(imageView.getLayoutParams() != null ? imageView.getLayoutParams().height : 0,
+                imageView.getHeight());
+        // The same icon may be shown at different sizes
+        final String key = url == null ? null : url + "@" + width + "x" + height;
+        final Bitmap cached = key == null ? null : icons.get(key);
+        if (cached != null) {
+            requested.remove(imageView);
+            imageView.setImageBitmap(cached);
+            return;
+        }
+        imageView.setImageResource(placeholder);
+        if (key == null) {
+            requested.remove(imageView);
+            return;
+        }
+        final boolean isLoading = requested.containsValue(key);
+        requested.put(imageView, key);
+        if (isLoading) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = decode(getFile(url), width, height);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLoaded(key, bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onLoaded(final String key, final Bitmap bitmap) {
+        if (bitmap != null) {
+            icons.put(key, bitmap);
+        }
+        for (Map.Entry<ImageView, String> entry : new WeakHashMap<>(requested).entrySet()) {
+            if (key.equals(entry.getValue())) {
+                requested.remove(entry.getKey());
+                if (bitmap != null) {
+                    entry.getKey().setImageBitmap(bitmap);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs on a background thread
+     *
+     * @return The cached file of the icon, downloaded if it isn't cached yet, or null if it couldn't be loaded
+     */
+    private File getFile(final String url) {
+        final File file = new File(directory, hash(url));
+        if (file.exists()) {
+            file.setLastModified(System.currentTimeMillis());
+            return file;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Can't create " + directory);
+            return null;
+        }
+        final File temp = new File(directory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            final InputStream input = connection.getInputStream();
+            final OutputStream output = new FileOutputStream(temp);
+            try {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, read);
+                }
+            } finally {
+                output.close();
+                input.close();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Failed to rename " + temp);
+            }
+            trimDirectory();
+            return file;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to load " + url, e);
+            temp.delete();
+            return null;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Delete the least recently used files until the directory is within its budget. Runs on a background thread.
+     */
+    private synchronized void trimDirectory() {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_DISK_BYTES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(final File lhs, final File rhs) {
+                return lhs.lastModified() < rhs.lastModified() ? -1 : lhs.lastModified() == rhs.lastModified() ? 0 : 1;
+            }
+        });
+        for (int i = 0; i < files.length && total > MAX_DISK_BYTES; i++) {
+            final long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    /**
+     * Decode a file, subsampled to no less than the given size. Runs on a background thread.
+     *
+     * @return The icon, or null if there is no file or it isn't an image
+     */
+    private static Bitmap decode(final File file, final int width, final int height) {
+        if (file == null) {
+            return null;
+        }
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.w(TAG, "Not an image: " + file);
+            file.delete();
+            return null;
+        }
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeFile(file.getPath(), options);
+    }
+
+    /**
+     * @param layoutSize Width or height of the view's layout params
+     * @param size       Width or height of the view once laid out
+     * @return The size to decode for
+     */
+    private static int getTargetSize(final int layoutSize, final int size) {
+        if (layoutSize > 0) {
+            return layoutSize;
+        }
+        return size > 0 ? size : DEFAULT_SIZE;
+    }
+
+    private static String hash(final String url) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+            final StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(String.format("%02x", b & 0xff));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // Neither happens on Android
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+}
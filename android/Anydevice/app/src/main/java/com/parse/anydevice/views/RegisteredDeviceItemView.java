@@ -9,7 +9,7 @@ import android.widget.TextView;
 
 import com.parse.ParseImageView;
 import com.parse.anydevice.R;
-import com.parse.anydevice.models.Event;
+import com.parse.anydevice.data.PresenceEngine;
 import com.parse.anydevice.models.Model;
 
 /**
@@ -44,15 +44,26 @@ public class RegisteredDeviceItemView extends RelativeLayout {
     /**
      * Populate views with data
      *
-     * @param deviceModel    {@link Model} representing board
+     * @param iconUrl        URL of the icon of the board's {@link Model}, null for the placeholder
      * @param deviceName     Name of the device
      * @param boardType      Model name of the board
-     * @param hasRecentEvent Whether we have a recent {@link Event}; if not show an error indicator
+     * @param presence       Whether the device is reporting as usual; if not show a (faded, if only late) error indicator
      */
-    public void setDevice(@NonNull final Model deviceModel, @NonNull final String deviceName, @NonNull final String boardType, final boolean hasRecentEvent) {
-        Model.putLogoIntoImageView(deviceModel, image, R.drawable.board_icon_list);
+    public void setDevice(final String iconUrl, @NonNull final String deviceName, @NonNull final String boardType,
+                          @NonNull final PresenceEngine.Presence presence) {
+        IconLoader.getInstance().load(iconUrl, image, R.drawable.board_icon_list);
         name.setText(deviceName);
         type.setText(boardType);
-        error.setVisibility(hasRecentEvent ? View.INVISIBLE : View.VISIBLE);
+        setPresence(presence);
+    }
+
+    /**
+     * Update only the error indicator
+     *
+     * @param presence Whether the device is reporting as usual
+     */
+    public void setPresence(@NonNull final PresenceEngine.Presence presence) {
+        error.setVisibility(presence == PresenceEngine.Presence.ONLINE ? View.INVISIBLE : View.VISIBLE);
+        error.setAlpha(presence == PresenceEngine.Presence.LATE ? 0.5f : 1f);
     }
 }
@@ -0,0 +1,170 @@
+package com.parse.anydevice.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.annotation.NonNull;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.parse.anydevice.R;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live chart of a device's readings.
+ * <p/>
+ * Samples go into a {@link TelemetryDownsampler}, and each frame draws at most one point per two pixels
+ * plus the min/max envelope, so drawing cost depends on the width of the view rather than the number
+ * of samples. Any number of samples added during a frame cause a single redraw on the next frame.
+ * The downsampler can be owned elsewhere and handed in with {@link #setDownsampler(TelemetryDownsampler)},
+ * so that the samples outlive the view.
+ */
+public class TelemetryChartView extends View {
+    private static final int BUCKETS = 1024;
+    private static final long INITIAL_BUCKET_SPAN = TimeUnit.SECONDS.toMillis(1);
+    private static final int PIXELS_PER_POINT = 2;
+
+    private TelemetryDownsampler downsampler = createDownsampler();
+    private final Paint linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint envelopePaint = new Paint();
+    private float minValue = 0f, maxValue = 1f;
+    private boolean isInvalidatePending;
+
+    // Drawing buffers, sized to the view so onDraw doesn't allocate
+    private float[] pointTime = new float[0], pointValue = new float[0];
+    private float[] envelopeTime = new float[0], envelopeMin = new float[0], envelopeMax = new float[0];
+    private float[] lines = new float[0];
+
+    public TelemetryChartView(final Context context) {
+        super(context);
+        init();
+    }
+
+    public TelemetryChartView(final Context context, final AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public TelemetryChartView(final Context context, final AttributeSet attrs, final int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        linePaint.setColor(getResources().getColor(R.color.app_accent));
+        linePaint.setStrokeWidth(getResources().getDisplayMetrics().density * 2);
+        linePaint.setStyle(Paint.Style.STROKE);
+        envelopePaint.setColor(getResources().getColor(R.color.light_grey));
+        envelopePaint.setStrokeWidth(PIXELS_PER_POINT);
+    }
+
+    /**
+     * @return An empty downsampler sized for this chart
+     */
+    public static TelemetryDownsampler createDownsampler() {
+        return new TelemetryDownsampler(BUCKETS, INITIAL_BUCKET_SPAN);
+    }
+
+    /**
+     * Draw the samples of another downsampler, e.g. one kept for a device across screens
+     */
+    public void setDownsampler(@NonNull final TelemetryDownsampler downsampler) {
+        this.downsampler = downsampler;
+        invalidateOnNextFrame();
+    }
+
+    /**
+     * Redraw on the next display frame after samples were added to the downsampler directly
+     */
+    public void onSamplesChanged() {
+        invalidateOnNextFrame();
+    }
+
+    /**
+     * Set the range of values shown from bottom to top
+     */
+    public void setRange(final float minValue, final float maxValue) {
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        invalidateOnNextFrame();
+    }
+
+    /**
+     * Add a reading; the chart is redrawn on the next display frame
+     *
+     * @param time  Time of the reading in milliseconds
+     * @param value The reading
+     */
+    public void addSample(final long time, final float value) {
+        downsampler.add(time, value);
+        invalidateOnNextFrame();
+    }
+
+    public void clear() {
+        downsampler.clear();
+        invalidateOnNextFrame();
+    }
+
+    @Override
+    protected void onSizeChanged(final int w, final int h, final int oldw, final int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        final int points = Math.max(w / PIXELS_PER_POINT, 3);
+        pointTime = new float[points];
+        pointValue = new float[points];
+        envelopeTime = new float[BUCKETS];
+        envelopeMin = new float[BUCKETS];
+        envelopeMax = new float[BUCKETS];
+        lines = new float[Math.max(points, BUCKETS) * 4];
+    }
+
+    @Override
+    protected void onDraw(final Canvas canvas) {
+        isInvalidatePending = false;
+        super.onDraw(canvas);
+        if (downsampler.getBucketCount() == 0 || pointTime.length == 0) {
+            return;
+        }
+        final float left = getPaddingLeft();
+        final float width = getWidth() - getPaddingLeft() - getPaddingRight();
+        final float duration = Math.max(downsampler.getEndTime() - downsampler.getStartTime(), 1);
+        final float xScale = width / duration;
+
+        final int envelopeCount = downsampler.envelope(envelopeTime, envelopeMin, envelopeMax);
+        for (int i = 0; i < envelopeCount; i++) {
+            final float x = left + envelopeTime[i] * xScale;
+            lines[i * 4] = x;
+            lines[i * 4 + 1] = toY(envelopeMin[i]);
+            lines[i * 4 + 2] = x;
+            lines[i * 4 + 3] = toY(envelopeMax[i]);
+        }
+        canvas.drawLines(lines, 0, envelopeCount * 4, envelopePaint);
+
+        final int pointCount = downsampler.downsample(pointTime, pointValue, pointTime.length);
+        for (int i = 1; i < pointCount; i++) {
+            lines[(i - 1) * 4] = left + pointTime[i - 1] * xScale;
+            lines[(i - 1) * 4 + 1] = toY(pointValue[i - 1]);
+            lines[(i - 1) * 4 + 2] = left + pointTime[i] * xScale;
+            lines[(i - 1) * 4 + 3] = toY(pointValue[i]);
+        }
+        if (pointCount > 1) {
+            canvas.drawLines(lines, 0, (pointCount - 1) * 4, linePaint);
+        }
+    }
+
+    private float toY(final float value) {
+        final float height = getHeight() - getPaddingTop() - getPaddingBottom();
+        final float fraction = (value - minValue) / (maxValue - minValue);
+        return getPaddingTop() + height * (1 - fraction);
+    }
+
+    /**
+     * Batch redraws to display frames
+     */
+    private void invalidateOnNextFrame() {
+        if (!isInvalidatePending) {
+            isInvalidatePending = true;
+            postInvalidateOnAnimation();
+        }
+    }
+}
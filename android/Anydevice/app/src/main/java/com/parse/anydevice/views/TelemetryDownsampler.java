@@ -0,0 +1,265 @@
+package com.parse.anydevice.views;
+
+/**
+ * Streaming downsampler for a time series of device readings.
+ * <p/>
+ * Samples are folded into a fixed number of time buckets that keep their min, max and mean. Once a
+ * sample falls past the last bucket, neighbouring buckets are merged pairwise and the bucket span doubles,
+ * so memory is fixed however many samples arrive. For drawing, {@link #downsample(float[], float[], int)}
+ * reduces the bucket means to the requested number of points with Largest-Triangle-Three-Buckets (LTTB),
+ * which keeps the visual shape of the series.
+ * <p/>
+ * Not thread safe.
+ */
+public class TelemetryDownsampler {
+    private final int capacity;
+    private final long[] bucketStart;
+    private final float[] min;
+    private final float[] max;
+    private final double[] sum;
+    private final int[] count;
+    private final long initialSpan;
+    private long origin;
+    private long span;
+    private int size;
+
+    /**
+     * @param capacity    Number of buckets, rounded up to an even number
+     * @param initialSpan Time covered by one bucket until the first merge, in milliseconds
+     */
+    public TelemetryDownsampler(final int capacity, final long initialSpan) {
+        this.capacity = capacity + (capacity % 2);
+        this.initialSpan = initialSpan;
+        bucketStart = new long[this.capacity];
+        min = new float[this.capacity];
+        max = new float[this.capacity];
+        sum = new double[this.capacity];
+        count = new int[this.capacity];
+        clear();
+    }
+
+    public void clear() {
+        size = 0;
+        span = initialSpan;
+    }
+
+    /**
+     * Fold in one sample. Samples older than the first bucket are dropped.
+     *
+     * @param time  Time of the sample in milliseconds
+     * @param value The reading
+     */
+    public void add(final long time, final float value) {
+        if (size == 0) {
+            origin = time;
+        }
+        if (time < origin) {
+            return;
+        }
+        int index = (int) ((time - origin) / span);
+        while (index >= capacity) {
+            compact();
+            index = (int) ((time - origin) / span);
+        }
+        while (size <= index) {
+            bucketStart[size] = origin + size * span;
+            count[size] = 0;
+            sum[size] = 0;
+            size++;
+        }
+        if (count[index] == 0) {
+            min[index] = value;
+            max[index] = value;
+        } else {
+            min[index] = Math.min(min[index], value);
+            max[index] = Math.max(max[index], value);
+        }
+        sum[index] += value;
+        count[index]++;
+    }
+
+    /**
+     * @return Number of buckets in use, including empty ones
+     */
+    public int getBucketCount() {
+        return size;
+    }
+
+    public long getStartTime() {
+        return origin;
+    }
+
+    /**
+     * @return Time just after the last bucket
+     */
+    public long getEndTime() {
+        return origin + size * span;
+    }
+
+    /**
+     * Copy the min/max envelope of the non-empty buckets
+     *
+     * @param outTime Receives the start time of each bucket relative to {@link #getStartTime()}
+     * @param outMin  Receives the bucket minimums
+     * @param outMax  Receives the bucket maximums
+     * @return Number of buckets written
+     */
+    public int envelope(final float[] outTime, final float[] outMin, final float[] outMax) {
+        int written = 0;
+        for (int i = 0; i < size && written < outTime.length; i++) {
+            if (count[i] > 0) {
+                outTime[written] = bucketStart[i] - origin + span / 2f;
+                outMin[written] = min[i];
+                outMax[written] = max[i];
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Reduce the bucket means to at most {@code threshold} points with LTTB
+     *
+     * @param outTime   Receives times relative to {@link #getStartTime()}; at least {@code threshold} long
+     * @param outValue  Receives values; at least {@code threshold} long
+     * @param threshold Number of points wanted, usually about the chart width in pixels
+     * @return Number of points written
+     */
+    public int downsample(final float[] outTime, final float[] outValue, final int threshold) {
+        final int points = nonEmptyCount();
+        if (points <= threshold || threshold < 3) {
+            int written = 0;
+            for (int i = 0; i < size && written < outTime.length; i++) {
+                if (count[i] > 0) {
+                    outTime[written] = x(i);
+                    outValue[written] = y(i);
+                    written++;
+                }
+            }
+            return written;
+        }
+
+        // Indexes of the non-empty buckets are found by walking, to avoid allocating a copy
+        final float bucketWidth = (float) (points - 2) / (threshold - 2);
+        int selected = firstNonEmpty(0);
+        outTime[0] = x(selected);
+        outValue[0] = y(selected);
+        int written = 1;
+        int cursor = nextNonEmpty(selected);
+        int rank = 1;
+        for (int b = 0; b < threshold - 2; b++) {
+            final int rangeEnd = (int) ((b + 1) * bucketWidth) + 1;
+            final int nextEnd = Math.min((int) ((b + 2) * bucketWidth) + 1, points);
+
+            // Average of the next range is the third corner of the triangle
+            float avgX = 0, avgY = 0;
+            int avgCount = 0;
+            int probe = cursor;
+            int probeRank = rank;
+            while (probeRank < rangeEnd) {
+                probe = nextNonEmpty(probe);
+                probeRank++;
+            }
+            while (probeRank < nextEnd) {
+                avgX += x(probe);
+                avgY += y(probe);
+                avgCount++;
+                probe = nextNonEmpty(probe);
+                probeRank++;
+            }
+            if (avgCount > 0) {
+                avgX /= avgCount;
+                avgY /= avgCount;
+            } else {
+                avgX = x(lastNonEmpty());
+                avgY = y(lastNonEmpty());
+            }
+
+            final float ax = outTime[written - 1];
+            final float ay = outValue[written - 1];
+            float maxArea = -1;
+            int best = cursor;
+            while (rank < rangeEnd) {
+                final float area = Math.abs((ax - avgX) * (y(cursor) - ay) - (ax - x(cursor)) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    best = cursor;
+                }
+                cursor = nextNonEmpty(cursor);
+                rank++;
+            }
+            outTime[written] = x(best);
+            outValue[written] = y(best);
+            written++;
+        }
+        final int last = lastNonEmpty();
+        outTime[written] = x(last);
+        outValue[written] = y(last);
+        return written + 1;
+    }
+
+    /**
+     * Merge neighbouring buckets pairwise and double the span
+     */
+    private void compact() {
+        final int merged = (size + 1) / 2;
+        for (int i = 0; i < merged; i++) {
+            final int a = 2 * i;
+            final int b = a + 1;
+            final boolean hasB = b < size && count[b] > 0;
+            bucketStart[i] = origin + i * span * 2;
+            if (count[a] > 0 && hasB) {
+                min[i] = Math.min(min[a], min[b]);
+                max[i] = Math.max(max[a], max[b]);
+            } else if (hasB) {
+                min[i] = min[b];
+                max[i] = max[b];
+            } else {
+                min[i] = min[a];
+                max[i] = max[a];
+            }
+            sum[i] = sum[a] + (hasB ? sum[b] : 0);
+            count[i] = count[a] + (hasB ? count[b] : 0);
+        }
+        size = merged;
+        span *= 2;
+    }
+
+    private float x(final int bucket) {
+        return bucketStart[bucket] - origin + span / 2f;
+    }
+
+    private float y(final int bucket) {
+        return (float) (sum[bucket] / count[bucket]);
+    }
+
+    private int nonEmptyCount() {
+        int points = 0;
+        for (int i = 0; i < size; i++) {
+            if (count[i] > 0) {
+                points++;
+            }
+        }
+        return points;
+    }
+
+    private int firstNonEmpty(final int from) {
+        int i = from;
+        while (i < size && count[i] == 0) {
+            i++;
+        }
+        return i;
+    }
+
+    private int nextNonEmpty(final int bucket) {
+        return firstNonEmpty(bucket + 1);
+    }
+
+    private int lastNonEmpty() {
+        int i = size - 1;
+        while (i > 0 && count[i] == 0) {
+            i--;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,284 @@
+package com.parse.anydevice.data;
+
+import com.parse.ParseClassName;
+import com.parse.ParseException;
+import com.parse.ParseObject;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OutboxTest {
+    private static final String SAVE = "save";
+    private static final String DELETE = "delete";
+
+    private final List<Outbox.Entry> entries = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        ParseObject.registerSubclass(Note.class);
+    }
+
+    @Test
+    public void savesOfOneObjectAreMerged() throws JSONException {
+        assertFalse(Outbox.enqueue(entries, null, save("n1", "text", "a", "color", "red")));
+        assertTrue(Outbox.enqueue(entries, null, save("n1", "text", "b")));
+        assertEquals(1, entries.size());
+        assertEquals("b", entries.get(0).fields.getString("text"));
+        assertEquals("red", entries.get(0).fields.getString("color"));
+    }
+
+    @Test
+    public void deleteReplacesPendingSaveAndGoesLast() throws JSONException {
+        Outbox.enqueue(entries, null, save("n1", "text", "a"));
+        Outbox.enqueue(entries, null, save("n2", "text", "b"));
+        assertTrue(Outbox.enqueue(entries, null, delete("n1")));
+        assertEquals(2, entries.size());
+        assertEquals(SAVE, entries.get(0).op);
+        assertEquals("n2", entries.get(0).objectId);
+        assertEquals(DELETE, entries.get(1).op);
+        assertEquals("n1", entries.get(1).objectId);
+    }
+
+    @Test
+    public void deletesOfOneObjectAreMerged() {
+        assertFalse(Outbox.enqueue(entries, null, delete("n1")));
+        assertTrue(Outbox.enqueue(entries, null, delete("n1")));
+        assertEquals(1, entries.size());
+    }
+
+    @Test
+    public void saveAfterDeleteStaysOrdered() throws JSONException {
+        Outbox.enqueue(entries, null, delete("n1"));
+        assertFalse(Outbox.enqueue(entries, null, save("n1", "text", "a")));
+        assertEquals(2, entries.size());
+        assertEquals(DELETE, entries.get(0).op);
+        assertEquals(SAVE, entries.get(1).op);
+    }
+
+    @Test
+    public void entriesInFlightAreNeverMerged() throws JSONException {
+        final Outbox.Entry sending = save("n1", "text", "a");
+        Outbox.enqueue(entries, null, sending);
+        final List<Outbox.Entry> inFlight = Collections.singletonList(sending);
+
+        assertFalse(Outbox.enqueue(entries, inFlight, save("n1", "text", "b")));
+        assertEquals(2, entries.size());
+        assertEquals("a", sending.fields.getString("text"));
+
+        // A later save merges into the pending one, not the one being sent
+        assertTrue(Outbox.enqueue(entries, inFlight, save("n1", "text", "c")));
+        assertEquals(2, entries.size());
+        assertEquals("c", entries.get(1).fields.getString("text"));
+
+        // A delete only replaces the pending save
+        assertTrue(Outbox.enqueue(entries, inFlight, delete("n1")));
+        assertEquals(2, entries.size());
+        assertSame(sending, entries.get(0));
+        assertEquals(DELETE, entries.get(1).op);
+    }
+
+    @Test
+    public void entrySurvivesJsonRoundTrip() throws JSONException {
+        final Outbox.Entry entry = new Outbox.Entry(SAVE, "_Installation", "i1", 1234);
+        entry.key = "_Installation:current";
+        entry.aclUserId = "u1";
+        entry.isCurrentInstallation = true;
+        entry.fields.put("deviceName", "Kitchen");
+        entry.fields.put("count", 3);
+        entry.fields.put("channels", new JSONArray().put("a"));
+        entry.fields.put("removed", JSONObject.NULL);
+        entry.fields.put("value", new JSONObject().put("__type", "Object").put("value", new JSONObject().put("state", "on")));
+        entry.fields.put("owner", new JSONObject().put("__type", "Pointer").put("className", "_User").put("objectId", "u1"));
+
+        final Outbox.Entry copy = Outbox.Entry.fromJson(new JSONObject(entry.toJson().toString()));
+        assertEquals(SAVE, copy.op);
+        assertEquals("_Installation", copy.className);
+        assertEquals("i1", copy.objectId);
+        assertEquals(1234, copy.enqueuedAt);
+        assertEquals("_Installation:current", copy.key);
+        assertEquals("u1", copy.aclUserId);
+        assertTrue(copy.isCurrentInstallation);
+        assertEquals(entry.fields.toString(), copy.fields.toString());
+    }
+
+    @Test
+    public void newObjectSurvivesJsonRoundTrip() throws JSONException {
+        final Outbox.Entry entry = save(null, "text", "a");
+        entry.sources.add(ParseObject.create(Note.class));
+
+        final Outbox.Entry copy = Outbox.Entry.fromJson(new JSONObject(entry.toJson().toString()));
+        assertNull(copy.objectId);
+        assertNull(copy.aclUserId);
+        assertFalse(copy.isCurrentInstallation);
+        assertEquals(entry.key, copy.key);
+        assertTrue(copy.sources.isEmpty());
+    }
+
+    @Test
+    public void savesDoneBeforeRejectedBatchAreNotSentAgain() throws JSONException {
+        final List<Outbox.Entry> batch = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            batch.add(save(null, "text", "t" + i));
+            Outbox.enqueue(entries, null, batch.get(i));
+        }
+        final FakeServer server = new FakeServer();
+        // The batch saves its first object and is then rejected; the fallback rejects the last object
+        server.respond(1, ParseException.OTHER_CAUSE);
+        server.respond(1, 0);
+        server.respond(0, ParseException.OTHER_CAUSE);
+
+        final Outbox.BatchResult result = Outbox.send(batch, server);
+        assertEquals(3, server.calls.size());
+        assertEquals(3, server.calls.get(0).size());
+        // Objects are built once, so the fallback updates the same instance instead of creating another one
+        assertSame(server.calls.get(0).get(1), server.calls.get(1).get(0));
+        assertSame(server.calls.get(0).get(2), server.calls.get(2).get(0));
+        assertEquals(1, server.created(server.calls.get(0).get(0)));
+        assertEquals(1, server.created(server.calls.get(0).get(1)));
+
+        assertEquals(2, result.written.size());
+        assertSame(batch.get(0), result.written.get(0));
+        assertSame(batch.get(1), result.written.get(1));
+        assertEquals(1, result.rejected.size());
+        assertSame(batch.get(2), result.rejected.get(0));
+        assertFalse(result.isOffline);
+
+        result.applyTo(entries);
+        assertTrue(entries.isEmpty());
+    }
+
+    @Test
+    public void savesDoneBeforeServerBecameUnreachableAreNotCreatedAgain() throws JSONException {
+        final Note source = ParseObject.create(Note.class);
+        final List<Outbox.Entry> batch = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            batch.add(save(null, "text", "t" + i));
+            Outbox.enqueue(entries, null, batch.get(i));
+        }
+        batch.get(0).sources.add(source);
+        final FakeServer server = new FakeServer();
+        // Saves the first object, creates the second one without finishing it and then times out
+        server.respond(1, ParseException.TIMEOUT);
+        server.createUnsaved = 1;
+
+        final Outbox.BatchResult result = Outbox.send(batch, server);
+        assertTrue(result.isOffline);
+        assertEquals(1, server.calls.size());
+        assertEquals(1, result.written.size());
+        assertSame(batch.get(0), result.written.get(0));
+
+        result.applyTo(entries);
+        assertEquals(2, entries.size());
+        assertNotNull(source.getObjectId());
+        assertEquals(source.getObjectId(), server.calls.get(0).get(0).getObjectId());
+        final String createdId = server.calls.get(0).get(1).getObjectId();
+        assertEquals(createdId, entries.get(0).objectId);
+        assertNull(entries.get(1).objectId);
+
+        // Sent again, the half-done object is updated rather than created a second time
+        server.respond(2, 0);
+        final Outbox.BatchResult retry = Outbox.send(new ArrayList<>(entries), server);
+        assertEquals(2, retry.written.size());
+        final List<ParseObject> resent = server.calls.get(1);
+        assertEquals(createdId, resent.get(0).getObjectId());
+        assertEquals(0, server.created(resent.get(0)));
+        assertEquals(1, server.created(resent.get(1)));
+        retry.applyTo(entries);
+        assertTrue(entries.isEmpty());
+    }
+
+    private static Outbox.Entry save(final String objectId, final String... fields) throws JSONException {
+        final Outbox.Entry entry = new Outbox.Entry(SAVE, Note.CLASS_NAME, objectId, System.currentTimeMillis());
+        entry.key = entry.getObjectKey();
+        for (int i = 0; i < fields.length; i += 2) {
+            entry.fields.put(fields[i], fields[i + 1]);
+        }
+        return entry;
+    }
+
+    private static Outbox.Entry delete(final String objectId) {
+        final Outbox.Entry entry = new Outbox.Entry(DELETE, Note.CLASS_NAME, objectId, System.currentTimeMillis());
+        entry.key = entry.getObjectKey();
+        return entry;
+    }
+
+    @ParseClassName(Note.CLASS_NAME)
+    public static class Note extends ParseObject {
+        static final String CLASS_NAME = "Note";
+
+        boolean isSaved;
+
+        public Note() {}
+
+        @Override
+        public boolean isDirty() {
+            return !isSaved && super.isDirty();
+        }
+    }
+
+    /**
+     * Saves a number of objects of each call and then fails it, as Parse does when a batch fails part way
+     */
+    private static class FakeServer implements Outbox.Server {
+        final List<List<ParseObject>> calls = new ArrayList<>();
+        final List<ParseObject> createdObjects = new ArrayList<>();
+        private final List<int[]> responses = new ArrayList<>();
+        int createUnsaved;
+        private int nextId;
+
+        /**
+         * @param saved Objects saved by the next call
+         * @param code  Code of the exception it then throws, 0 for none
+         */
+        void respond(final int saved, final int code) {
+            responses.add(new int[]{saved, code});
+        }
+
+        int created(final ParseObject object) {
+            int count = 0;
+            for (ParseObject created : createdObjects) {
+                if (created == object) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public void saveAll(final List<ParseObject> objects) throws ParseException {
+            calls.add(new ArrayList<>(objects));
+            final int[] response = responses.remove(0);
+            for (int i = 0; i < objects.size() && i < response[0] + createUnsaved; i++) {
+                final Note note = (Note) objects.get(i);
+                if (note.getObjectId() == null) {
+                    note.setObjectId("id" + nextId++);
+                    createdObjects.add(note);
+                }
+                note.isSaved = i < response[0];
+            }
+            createUnsaved = 0;
+            if (response[1] != 0) {
+                throw new ParseException(response[1], "failed");
+            }
+        }
+
+        @Override
+        public void deleteAll(final List<ParseObject> objects) throws ParseException {
+            calls.add(new ArrayList<>(objects));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.parse.anydevice.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueryMetricsTest {
+    private long now;
+    private QueryMetrics metrics;
+
+    @Before
+    public void setUp() {
+        now = 1000;
+        metrics = new QueryMetrics(new QueryMetrics.Clock() {
+            @Override
+            public long elapsedRealtime() {
+                return now;
+            }
+        });
+    }
+
+    @Test
+    public void deviceListOpensWithOneNetworkQuery() {
+        metrics.enterScreen(QueryMetrics.SCREEN_DEVICE_LIST);
+        final QueryMetrics.Timer local = metrics.start("installations:local", true, 1);
+        final QueryMetrics.Timer network = metrics.start("installations", false, 1);
+        now += 3;
+        local.stop(20, null);
+        now += 120;
+        network.stop(20, null);
+        metrics.recordHit("models", QueryMetrics.Source.MEMORY);
+
+        final QueryMetrics.ScreenStats stats = metrics.getScreenStats(QueryMetrics.SCREEN_DEVICE_LIST);
+        assertEquals(1, stats.getNetworkQueries());
+        assertEquals(1, stats.getLocalQueries());
+        assertEquals(2, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertTrue(metrics.isWithinBudget(QueryMetrics.SCREEN_DEVICE_LIST));
+        assertEquals(123, metrics.getQueryStats("installations").getLatency().getMean());
+    }
+
+    @Test
+    public void secondNetworkQueryExceedsDeviceListBudget() {
+        metrics.enterScreen(QueryMetrics.SCREEN_DEVICE_LIST);
+        metrics.start("installations", false, 1).stop(20, null);
+        assertTrue(metrics.isWithinBudget(QueryMetrics.SCREEN_DEVICE_LIST));
+        metrics.start("models", false, 1).stop(3, null);
+        assertFalse(metrics.isWithinBudget(QueryMetrics.SCREEN_DEVICE_LIST));
+    }
+
+    @Test
+    public void cachedResultIsNotCountedAsNetworkQuery() {
+        metrics.enterScreen(QueryMetrics.SCREEN_DEVICE_LIST);
+        final QueryMetrics.Timer timer = metrics.start("installations", false, 2);
+        timer.stop(20, null);
+        assertEquals(0, metrics.getScreenStats(QueryMetrics.SCREEN_DEVICE_LIST).getNetworkQueries());
+        timer.stop(20, null);
+        assertEquals(1, metrics.getScreenStats(QueryMetrics.SCREEN_DEVICE_LIST).getNetworkQueries());
+        assertEquals(1, metrics.getQueryStats("installations").getCount(QueryMetrics.Source.CACHE));
+    }
+
+    @Test
+    public void countsStartOverWhenScreenIsEnteredAgain() {
+        metrics.enterScreen(QueryMetrics.SCREEN_DEVICE_LIST);
+        metrics.start("installations", false, 1).stop(20, null);
+        metrics.start("models", false, 1).stop(3, null);
+        metrics.enterScreen(QueryMetrics.SCREEN_DEVICE_DETAILS);
+        metrics.enterScreen(QueryMetrics.SCREEN_DEVICE_LIST);
+        assertEquals(0, metrics.getScreenStats(QueryMetrics.SCREEN_DEVICE_LIST).getNetworkQueries());
+        assertTrue(metrics.isWithinBudget(QueryMetrics.SCREEN_DEVICE_LIST));
+    }
+
+    @Test
+    public void queryOutsideScreenCountsTowardsNone() {
+        metrics.start("installations", false, 1).stop(20, null);
+        assertNull(metrics.getScreenStats(QueryMetrics.SCREEN_DEVICE_LIST));
+        assertEquals(1, metrics.getQueryStats("installations").getMisses());
+    }
+}
@@ -0,0 +1,39 @@
+package com.parse.anydevice.models;
+
+import com.parse.ParseObject;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ModelTest {
+    @Before
+    public void setUp() {
+        ParseObject.registerSubclass(Model.class);
+    }
+
+    @Test
+    public void modelWithoutOptionalFields() {
+        final Model model = new Model();
+        model.put(Model.BOARD_TYPE, "CC3200 LaunchPad");
+        assertFalse(model.isDefault());
+        assertNull(model.getIcon());
+    }
+
+    @Test
+    public void modelWhoseFieldsWereNotFetched() {
+        final Model model = ParseObject.createWithoutData(Model.class, "abc");
+        assertFalse(model.isDefault());
+        assertNull(model.getIcon());
+    }
+
+    @Test
+    public void defaultModel() {
+        final Model model = new Model();
+        model.put(Model.DEFAULT, true);
+        assertTrue(model.isDefault());
+    }
+}
@@ -0,0 +1,165 @@
+package com.parse.anydevice.views;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TelemetryDownsamplerTest {
+    private static final float DELTA = 1e-4f;
+
+    @Test
+    public void samplesAreFoldedIntoTimeBuckets() {
+        final TelemetryDownsampler downsampler = new TelemetryDownsampler(4, 10);
+        downsampler.add(1000, 1);
+        downsampler.add(1005, 3);
+        downsampler.add(1015, 2);
+        assertEquals(2, downsampler.getBucketCount());
+        assertEquals(1000, downsampler.getStartTime());
+        assertEquals(1020, downsampler.getEndTime());
+
+        final float[] time = new float[4];
+        final float[] min = new float[4];
+        final float[] max = new float[4];
+        assertEquals(2, downsampler.envelope(time, min, max));
+        assertArrayEquals(new float[]{5, 15}, slice(time, 2), DELTA);
+        assertArrayEquals(new float[]{1, 2}, slice(min, 2), DELTA);
+        assertArrayEquals(new float[]{3, 2}, slice(max, 2), DELTA);
+
+        final float[] value = new float[4];
+        assertEquals(2, downsampler.downsample(time, value, 10));
+        assertArrayEquals(new float[]{2, 2}, slice(value, 2), DELTA);
+    }
+
+    @Test
+    public void sampleOlderThanFirstBucketIsDropped() {
+        final TelemetryDownsampler downsampler = new TelemetryDownsampler(4, 10);
+        downsampler.add(1000, 1);
+        downsampler.add(990, 5);
+        final float[] time = new float[4];
+        final float[] min = new float[4];
+        final float[] max = new float[4];
+        assertEquals(1, downsampler.envelope(time, min, max));
+        assertEquals(1, min[0], DELTA);
+        assertEquals(1, max[0], DELTA);
+    }
+
+    @Test
+    public void lateSampleWithinRangeGoesIntoItsOwnBucket() {
+        final TelemetryDownsampler downsampler = new TelemetryDownsampler(4, 10);
+        downsampler.add(1000, 1);
+        downsampler.add(1030, 4);
+        downsampler.add(1012, 2);
+        final float[] time = new float[4];
+        final float[] value = new float[4];
+        assertEquals(3, downsampler.downsample(time, value, 10));
+        assertArrayEquals(new float[]{5, 15, 35}, slice(time, 3), DELTA);
+        assertArrayEquals(new float[]{1, 2, 4}, slice(value, 3), DELTA);
+    }
+
+    @Test
+    public void emptyBucketsAreSkipped() {
+        final TelemetryDownsampler downsampler = new TelemetryDownsampler(4, 10);
+        downsampler.add(0, 1);
+        downsampler.add(35, 3);
+        assertEquals(4, downsampler.getBucketCount());
+        final float[] time = new float[4];
+        final float[] value = new float[4];
+        assertEquals(2, downsampler.downsample(time, value, 10));
+        assertArrayEquals(new float[]{5, 35}, slice(time, 2), DELTA);
+    }
+
+    @Test
+    public void capacityIsRoundedUpToEven() {
+        final TelemetryDownsampler downsampler = new TelemetryDownsampler(3, 10);
+        for (int i = 0; i < 4; i++) {
+            downsampler.add(i * 10, i);
+        }
+        assertEquals(4, downsampler.getBucketCount());
+        assertEquals(40, downsampler.getEndTime());
+    }
+
+    @Test
+    public void bucketsMergePairwiseAtCapacity() {
+        final TelemetryDownsampler downsampler = new TelemetryDownsampler(4, 10);
+        for (int i = 0; i < 5; i++) {
+            downsampler.add(i * 10, i);
+        }
+        assertEquals(3, downsampler.getBucketCount());
+        assertEquals(0, downsampler.getStartTime());
+        assertEquals(60, downsampler.getEndTime());
+
+        final float[] time = new float[4];
+        final float[] min = new float[4];
+        final float[] max = new float[4];
+        assertEquals(3, downsampler.envelope(time, min, max));
+        assertArrayEquals(new float[]{10, 30, 50}, slice(time, 3), DELTA);
+        assertArrayEquals(new float[]{0, 2, 4}, slice(min, 3), DELTA);
+        assertArrayEquals(new float[]{1, 3, 4}, slice(max, 3), DELTA);
+
+        final float[] value = new float[4];
+        assertEquals(3, downsampler.downsample(time, value, 10));
+        assertArrayEquals(new float[]{0.5f, 2.5f, 4}, slice(value, 3), DELTA);
+    }
+
+    @Test
+    public void farSampleMergesUntilItFits() {
+        final TelemetryDownsampler downsampler = new TelemetryDownsampler(4, 10);
+        downsampler.add(0, 1);
+        downsampler.add(10, 3);
+        downsampler.add(150, 5);
+        // Spans of 10 and 20 can't reach 150 within 4 buckets, 40 can
+        assertEquals(4, downsampler.getBucketCount());
+        assertEquals(160, downsampler.getEndTime());
+        final float[] time = new float[4];
+        final float[] value = new float[4];
+        assertEquals(2, downsampler.downsample(time, value, 10));
+        assertArrayEquals(new float[]{20, 140}, slice(time, 2), DELTA);
+        assertArrayEquals(new float[]{2, 5}, slice(value, 2), DELTA);
+    }
+
+    @Test
+    public void lttbKeepsEndpointsAndPeak() {
+        final TelemetryDownsampler downsampler = new TelemetryDownsampler(16, 1);
+        for (int i = 0; i < 10; i++) {
+            downsampler.add(i, i == 4 ? 10 : 0);
+        }
+        final float[] time = new float[3];
+        final float[] value = new float[3];
+        assertEquals(3, downsampler.downsample(time, value, 3));
+        assertArrayEquals(new float[]{0.5f, 4.5f, 9.5f}, time, DELTA);
+        assertArrayEquals(new float[]{0, 10, 0}, value, DELTA);
+    }
+
+    @Test
+    public void lttbPicksLargestTriangleOfEachBucket() {
+        final TelemetryDownsampler downsampler = new TelemetryDownsampler(16, 1);
+        for (int i = 0; i < 10; i++) {
+            downsampler.add(i, i == 2 ? 10 : i == 7 ? -10 : 0);
+        }
+        final float[] time = new float[4];
+        final float[] value = new float[4];
+        assertEquals(4, downsampler.downsample(time, value, 4));
+        assertArrayEquals(new float[]{0.5f, 2.5f, 7.5f, 9.5f}, time, DELTA);
+        assertArrayEquals(new float[]{0, 10, -10, 0}, value, DELTA);
+    }
+
+    @Test
+    public void clearStartsOver() {
+        final TelemetryDownsampler downsampler = new TelemetryDownsampler(4, 10);
+        for (int i = 0; i < 5; i++) {
+            downsampler.add(i * 10, i);
+        }
+        downsampler.clear();
+        assertEquals(0, downsampler.getBucketCount());
+        downsampler.add(500, 7);
+        assertEquals(500, downsampler.getStartTime());
+        assertEquals(510, downsampler.getEndTime());
+    }
+
+    private static float[] slice(final float[] values, final int length) {
+        final float[] slice = new float[length];
+        System.arraycopy(values, 0, slice, 0, length);
+        return slice;
+    }
+}
@@ -0,0 +1,48 @@
+package com.parse.anydevice.benchmarks;
+
+import com.parse.anydevice.util.FormEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of the provisioning form posted to a board, as in Request.getQuery
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FormEncoderBenchmark {
+    // Same parameters as BoardTask.tryToPost, with typical values
+    private final String[] names = {
+            "__SL_P_USA", "__SL_P_USB", "__SL_P_USC", "__SL_P_USD", "__SL_P_USE",
+            "__SL_P_USF", "__SL_P_USG", "__SL_P_USH", "__SL_P_USZ"
+    };
+    private final String[] values = {
+            "Home Network 5GHz", "2", "correct horse & battery staple!",
+            "w1Xm1t8VSxzZYpQ2h3ifvAv5mnEjRcXUrQxM7lRq", "YrZ9lnBNy0rAwZ2SArPX4kz0AvB8p3xwBzEi4a6Y",
+            "2d6f1a3c-5b7e-4f90-8a12-3c4d5e6f7a8b", "r:3c1fd8a4e2b94b6f9a0e7d5c8b3a2f1e",
+            "Kitchen light", "Add"
+    };
+
+    @Benchmark
+    public String encode() throws UnsupportedEncodingException {
+        final FormEncoder encoder = new FormEncoder();
+        for (int i = 0; i < names.length; i++) {
+            encoder.add(names[i], values[i]);
+        }
+        return encoder.toString();
+    }
+}
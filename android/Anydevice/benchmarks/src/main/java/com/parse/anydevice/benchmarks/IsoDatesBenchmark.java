@@ -0,0 +1,35 @@
+package com.parse.anydevice.benchmarks;
+
+import com.parse.anydevice.util.IsoDates;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of an event's creation time, as in Event.fromJson and push payload decoding
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IsoDatesBenchmark {
+    private final String createdAt = "2015-03-24T18:23:06.412Z";
+
+    @Benchmark
+    public Date parse() throws ParseException {
+        return IsoDates.parse(createdAt);
+    }
+}
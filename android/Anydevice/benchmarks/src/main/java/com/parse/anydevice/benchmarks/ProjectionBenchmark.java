@@ -0,0 +1,108 @@
+package com.parse.anydevice.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.parse.anydevice.benchmarks.standin.Latency;
+import com.parse.anydevice.benchmarks.standin.ParseStandIn;
+import com.parse.anydevice.benchmarks.standin.RestClient;
+import com.parse.anydevice.benchmarks.standin.RestQuery;
+import com.parse.anydevice.benchmarks.standin.StandInFleet;
+import com.parse.anydevice.util.ProjectedKeys;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of fetching whole objects against fetching only the keys the app selects, against a
+ * {@link ParseStandIn} without latency so the time is spent sending and parsing.
+ * <p/>
+ * The app pins installations and models whole and only projects reads it doesn't keep, with the keys in
+ * {@link ProjectedKeys}; the whole-object list and sync queries are covered by {@link QueryPatternBenchmark}.
+ * Every operation is one response, so the responseBytes counter divided by the score is the bytes per
+ * response. The GC profiler shows the allocations of parsing them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProjectionBenchmark {
+    private static final int DEVICES = 200;
+    // As TelemetryHistory seeds a chart
+    private static final int SEED_EVENTS = 100;
+
+    private ParseStandIn standIn;
+    private RestClient client;
+    private String installationObjectId;
+
+    /**
+     * Bytes received, reported by JMH next to the score
+     */
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class Traffic {
+        public long responseBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            responseBytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        standIn = new ParseStandIn(new Latency(0, 0));
+        installationObjectId = new StandInFleet(standIn, DEVICES).getHistoryObjectId();
+        standIn.start();
+        client = new RestClient(standIn.getUrl());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        standIn.stop();
+    }
+
+    /**
+     * Recent events of a device with whole objects
+     */
+    @Benchmark
+    public JsonArray recentEvents(final Traffic traffic) throws IOException {
+        return find(createRecentEventsQuery(), traffic);
+    }
+
+    /**
+     * Recent events as TelemetryHistory fetches them, with only the keys the details chart reads
+     */
+    @Benchmark
+    public JsonArray recentEventsProjected(final Traffic traffic) throws IOException {
+        return find(createRecentEventsQuery().selectKeys(ProjectedKeys.DEVICE_DETAILS_EVENTS), traffic);
+    }
+
+    private JsonArray find(final RestQuery query, final Traffic traffic) throws IOException {
+        final long bytes = client.getResponseBytes();
+        final JsonArray results = client.find(query);
+        traffic.responseBytes += client.getResponseBytes() - bytes;
+        return results;
+    }
+
+    private RestQuery createRecentEventsQuery() {
+        return new RestQuery("Event")
+                .whereEqualTo("installationId", installationObjectId)
+                .orderByDescending("createdAt")
+                .setLimit(SEED_EVENTS);
+    }
+}
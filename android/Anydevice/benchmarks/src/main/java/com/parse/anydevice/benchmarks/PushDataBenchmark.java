@@ -0,0 +1,53 @@
+package com.parse.anydevice.benchmarks;
+
+import com.parse.anydevice.util.PushData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of a device event push as sent by the cloud code, as in PushPayload.decode
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PushDataBenchmark {
+    private final String eventPush = "{"
+            + "\"action\":\"com.parse.anydevice.EVENT\","
+            + "\"userSessionId\":\"kT3bQ9xLmP\","
+            + "\"installationId\":\"2d6f1a3c-5b7e-4f90-8a12-3c4d5e6f7a8b\","
+            + "\"event\":{"
+            + "\"objectId\":\"Zr8wNc4VhA\","
+            + "\"installationId\":\"Hq2mXv7LpS\","
+            + "\"value\":{\"state\":\"blink\"},"
+            + "\"createdAt\":\"2015-03-24T18:23:06.412Z\"},"
+            + "\"alert\":\"Kitchen light is blinking\","
+            + "\"push_hash\":\"d41d8cd98f00b204e9800998ecf8427e\""
+            + "}";
+
+    private final String alertPush = "{\"alert\":\"Welcome to Anydevice\",\"push_hash\":\"9e107d9d372bb6826bd81d3542a419d6\"}";
+
+    @Benchmark
+    public PushData decodeEvent() throws IOException, ParseException {
+        return PushData.decode(eventPush);
+    }
+
+    @Benchmark
+    public PushData decodeAlert() throws IOException, ParseException {
+        return PushData.decode(alertPush);
+    }
+}
@@ -0,0 +1,185 @@
+package com.parse.anydevice.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.parse.anydevice.benchmarks.standin.Latency;
+import com.parse.anydevice.benchmarks.standin.ParseStandIn;
+import com.parse.anydevice.benchmarks.standin.RestClient;
+import com.parse.anydevice.benchmarks.standin.RestQuery;
+import com.parse.anydevice.benchmarks.standin.StandInFleet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round-trip cost of the app's query patterns against a {@link ParseStandIn} with injected latency.
+ * Latencies roughly model Wi-Fi close to the backend, a good mobile network and a poor one; jitter is a
+ * quarter of the latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QueryPatternBenchmark {
+    private static final int DEVICES = 200;
+    private static final int PAGE_SIZE = 50;
+    private static final int SYNC_PAGE_SIZE = 1000;
+
+    @Param({"0", "40", "150"})
+    public long latencyMillis;
+
+    private ParseStandIn standIn;
+    private RestClient client;
+    private ExecutorService executor;
+    private List<String> installationIds;
+    private int nextDevice;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        standIn = new ParseStandIn(new Latency(latencyMillis, latencyMillis / 4));
+        installationIds = new StandInFleet(standIn, DEVICES).getInstallationIds();
+        standIn.start();
+        client = new RestClient(standIn.getUrl());
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        standIn.stop();
+    }
+
+    /**
+     * First page of RegisteredDeviceListAdapter.loadObjects as it was queried from the server before the list
+     * read the local datastore: one round trip, models and latest events come along through include
+     */
+    @Benchmark
+    public JsonArray deviceListPage() throws IOException {
+        return client.find(createDeviceListQuery()
+                .include("model")
+                .include("latestEvent"));
+    }
+
+    /**
+     * The same page resolving models and latest events with containedIn queries instead: three round trips
+     */
+    @Benchmark
+    public int deviceListPageWithContainedIn() throws IOException {
+        final JsonArray installations = client.find(createDeviceListQuery());
+        final Set<JsonElement> models = new LinkedHashSet<>();
+        final List<JsonElement> events = new ArrayList<>();
+        for (JsonElement installation : installations) {
+            models.add(objectId(installation, "model"));
+            events.add(objectId(installation, "latestEvent"));
+        }
+        final JsonArray modelResults = client.find(new RestQuery("Model").whereContainedIn("objectId", new ArrayList<>(models)));
+        final JsonArray eventResults = client.find(new RestQuery("Event").whereContainedIn("objectId", events).setLimit(PAGE_SIZE));
+        return installations.size() + modelResults.size() + eventResults.size();
+    }
+
+    /**
+     * One page of DeviceRepository.sync for installations: the boards that have a session, through
+     * whereMatchesKeyInQuery, in updatedAt order, with models and latest events included. One round trip.
+     */
+    @Benchmark
+    public JsonArray syncInstallations() throws IOException {
+        return client.find(new RestQuery("_Installation")
+                .whereMatchesKeyInQuery("installationId", "installationId", new RestQuery("_Session")
+                        // What the session ACLs do for the app
+                        .whereEqualTo("user", RestQuery.pointer("_User", StandInFleet.OWNER_ID)))
+                .whereEqualTo("deviceType", "embedded")
+                .whereExists("model")
+                .include("model")
+                .include("latestEvent")
+                .orderByAscending("updatedAt")
+                .setLimit(SYNC_PAGE_SIZE));
+    }
+
+    /**
+     * A detail screen load on a cold cache as DeviceDetailsLoader does it: installation and session queried
+     * at the same time, so it costs about one round trip
+     */
+    @Benchmark
+    public JsonObject[] deviceDetailsParallel() throws InterruptedException, ExecutionException {
+        final String installationId = nextInstallationId();
+        final Future<JsonObject> installation = executor.submit(new Callable<JsonObject>() {
+            @Override
+            public JsonObject call() throws IOException {
+                return client.getFirst(createInstallationQuery(installationId));
+            }
+        });
+        final Future<JsonObject> session = executor.submit(new Callable<JsonObject>() {
+            @Override
+            public JsonObject call() throws IOException {
+                return client.getFirst(createSessionQuery(installationId));
+            }
+        });
+        return new JsonObject[]{installation.get(), session.get()};
+    }
+
+    /**
+     * A detail screen load as it was before DeviceDetailsLoader: the session queried once the installation
+     * arrived, two round trips
+     */
+    @Benchmark
+    public JsonObject[] deviceDetailsSequential() throws IOException {
+        final String installationId = nextInstallationId();
+        final JsonObject installation = client.getFirst(createInstallationQuery(installationId));
+        final JsonObject session = client.getFirst(createSessionQuery(installationId));
+        return new JsonObject[]{installation, session};
+    }
+
+    private static RestQuery createDeviceListQuery() {
+        return new RestQuery("_Installation")
+                .whereEqualTo("owner", RestQuery.pointer("_User", StandInFleet.OWNER_ID))
+                .whereEqualTo("deviceType", "embedded")
+                .orderByAscending("objectId")
+                .setLimit(PAGE_SIZE);
+    }
+
+    private static RestQuery createInstallationQuery(final String installationId) {
+        return new RestQuery("_Installation")
+                .whereEqualTo("installationId", installationId)
+                .include("model")
+                .include("latestEvent");
+    }
+
+    private static RestQuery createSessionQuery(final String installationId) {
+        return new RestQuery("_Session").whereEqualTo("installationId", installationId);
+    }
+
+    private static JsonElement objectId(final JsonElement object, final String pointerKey) {
+        return object.getAsJsonObject().getAsJsonObject(pointerKey).get("objectId");
+    }
+
+    private String nextInstallationId() {
+        nextDevice = (nextDevice + 1) % installationIds.size();
+        return installationIds.get(nextDevice);
+    }
+}
@@ -0,0 +1,94 @@
+package com.parse.anydevice.benchmarks;
+
+import com.parse.anydevice.util.ScanClassifier;
+import com.parse.anydevice.util.Ssids;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classification of a whole scan, as done by AccessPointBroadcastReceiver for every scan result: index the
+ * models by app name, then pick out the supported boards and match each to its model. The linear variant
+ * matches the way NewDevice.setupModelName used to, by comparing every board with every model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanClassifierBenchmark {
+    @Param({"10", "100", "1000"})
+    public int accessPoints;
+
+    @Param({"5", "50"})
+    public int models;
+
+    private final List<String> modelAppNames = new ArrayList<>();
+    private final List<String> ssids = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        for (int i = 0; i < models; i++) {
+            modelAppNames.add("app" + i);
+        }
+        // A quarter of the access points are boards, some of them running apps without a model
+        for (int i = 0; i < accessPoints; i++) {
+            if (random.nextInt(4) == 0) {
+                ssids.add("TL04-app" + random.nextInt(models + 2) + "-" + Integer.toHexString(random.nextInt(0x10000)));
+            } else {
+                ssids.add("Network " + Integer.toHexString(random.nextInt()));
+            }
+        }
+    }
+
+    @Benchmark
+    public int classify() {
+        final Map<String, String> modelsByAppName = new HashMap<>();
+        for (String appName : modelAppNames) {
+            modelsByAppName.put(appName, appName);
+        }
+        final ScanClassifier<String> classifier = new ScanClassifier<>(modelsByAppName);
+        int matched = 0;
+        for (String ssid : ssids) {
+            if (classifier.isSupported(ssid) && classifier.match(ssid) != null) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int classifyLinear() {
+        int matched = 0;
+        for (String ssid : ssids) {
+            if (!Ssids.isPlatformSupported(ssid)) {
+                continue;
+            }
+            for (String appName : modelAppNames) {
+                if (appName.equals(Ssids.getAppName(ssid))) {
+                    matched++;
+                    break;
+                }
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,60 @@
+package com.parse.anydevice.benchmarks;
+
+import com.parse.anydevice.util.Ssids;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSID parsing done for every access point of a scan, as in Constants.getPlatform/getSSIDPrefix
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SsidsBenchmark {
+    private static final int SSIDS = 8;
+
+    // Half boards, half the usual neighbours
+    private final String[] ssids = {
+            "TL04-blink-1a2b", "TL04-thermostat-9f3e", "TL04-x", "TL04-doorbell-77aa",
+            "Home Network 5GHz", "xfinitywifi", "DIRECT-4C-HP OfficeJet", "eduroam"
+    };
+
+    @Benchmark
+    @OperationsPerInvocation(SSIDS)
+    public void isPlatformSupported(final Blackhole blackhole) {
+        for (String ssid : ssids) {
+            blackhole.consume(Ssids.isPlatformSupported(ssid));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SSIDS)
+    public void getPlatform(final Blackhole blackhole) {
+        for (String ssid : ssids) {
+            blackhole.consume(Ssids.getPlatform(ssid));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SSIDS)
+    public void getAppName(final Blackhole blackhole) {
+        for (String ssid : ssids) {
+            blackhole.consume(Ssids.getAppName(ssid));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.parse.anydevice.benchmarks.standin;
+
+import java.util.Random;
+
+/**
+ * Delay added to every request the {@link ParseStandIn} serves, to model the round trip to the hosted backend
+ */
+public class Latency {
+    public static final Latency NONE = new Latency(0, 0);
+
+    private final long baseMillis;
+    private final long jitterMillis;
+    private final Random random = new Random(42);
+
+    /**
+     * @param baseMillis   Average delay of a request in milliseconds
+     * @param jitterMillis Maximum deviation from the average, drawn uniformly for every request
+     */
+    public Latency(final long baseMillis, final long jitterMillis) {
+        this.baseMillis = baseMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    /**
+     * @return Delay for the next request in milliseconds
+     */
+    public synchronized long next() {
+        if (jitterMillis <= 0) {
+            return baseMillis;
+        }
+        final long jitter = (long) ((random.nextDouble() * 2 - 1) * jitterMillis);
+        return Math.max(baseMillis + jitter, 0);
+    }
+
+    @Override
+    public String toString() {
+        return baseMillis + " ms +- " + jitterMillis + " ms";
+    }
+}
@@ -0,0 +1,252 @@
+package com.parse.anydevice.benchmarks.standin;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SimpleTimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process stand-in for the Parse REST endpoints the app uses, so query patterns can be measured offline.
+ * <p/>
+ * Serves {@code GET /1/classes/<class>} queries (see {@link StandInQuery} for the supported constraints),
+ * {@code GET /1/classes/<class>/<objectId>} and {@code POST /1/classes/<class>} for the classes in
+ * {@link #CLASSES}, from memory. Every request is delayed by the configured {@link Latency} before it is
+ * answered, and requests are served concurrently, so parallel requests overlap like they would against
+ * the hosted backend. Authentication and ACLs are not modelled.
+ */
+public class ParseStandIn {
+    public static final Set<String> CLASSES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "_Installation", "_Session", "_User", "Event", "Model", "Message", "InfrastructureKey")));
+    private static final String CLASSES_PATH = "/1/classes/";
+    private static final String UTF8_ENCODING = "UTF-8";
+
+    static {
+        // Otherwise Nagle's algorithm and delayed ACKs add ~40 ms to every response, swamping the injected latency
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final Map<String, Map<String, JsonObject>> classes = new HashMap<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger nextObjectId = new AtomicInteger();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private volatile Latency latency;
+
+    /**
+     * @param latency Delay of every request
+     * @throws IOException If no local port is available
+     */
+    public ParseStandIn(final Latency latency) throws IOException {
+        this.latency = latency;
+        for (String className : CLASSES) {
+            classes.put(className, new LinkedHashMap<String, JsonObject>());
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(CLASSES_PATH, new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return Base URL of the REST API, e.g. http://127.0.0.1:54321/1/
+     */
+    public String getUrl() {
+        return "http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort() + "/1/";
+    }
+
+    public void setLatency(final Latency latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * @return Number of requests served since the last {@link #resetRequestCount()}
+     */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    public void resetRequestCount() {
+        requestCount.set(0);
+    }
+
+    /**
+     * Store an object directly, without a request, e.g. to seed data
+     *
+     * @param className Class of the object
+     * @param object    Fields of the object; objectId, createdAt and updatedAt are filled in if missing
+     * @return The stored object
+     */
+    public JsonObject save(final String className, final JsonObject object) {
+        final Map<String, JsonObject> objects = getClass(className);
+        if (!object.has("objectId")) {
+            object.addProperty("objectId", String.format(Locale.US, "so%08d", nextObjectId.incrementAndGet()));
+        }
+        final String now = formatDate(new Date());
+        if (!object.has("createdAt")) {
+            object.addProperty("createdAt", now);
+        }
+        if (!object.has("updatedAt")) {
+            object.addProperty("updatedAt", object.get("createdAt").getAsString());
+        }
+        synchronized (objects) {
+            objects.put(object.get("objectId").getAsString(), object);
+        }
+        return object;
+    }
+
+    /**
+     * @param className Class of the objects
+     * @return Copy of all objects of the class
+     */
+    List<JsonObject> getAll(final String className) {
+        final Map<String, JsonObject> objects = getClass(className);
+        synchronized (objects) {
+            return new ArrayList<>(objects.values());
+        }
+    }
+
+    JsonObject get(final String className, final String objectId) {
+        final Map<String, JsonObject> objects = getClass(className);
+        synchronized (objects) {
+            return objects.get(objectId);
+        }
+    }
+
+    static String formatDate(final Date date) {
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(new SimpleTimeZone(0, "GMT"));
+        return format.format(date);
+    }
+
+    private Map<String, JsonObject> getClass(final String className) {
+        final Map<String, JsonObject> objects = classes.get(className);
+        if (objects == null) {
+            throw new IllegalArgumentException("Unsupported class " + className);
+        }
+        return objects;
+    }
+
+    private void serve(final HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try {
+            Thread.sleep(latency.next());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        final String[] path = exchange.getRequestURI().getPath().substring(CLASSES_PATH.length()).split("/");
+        final String className = path[0];
+        if (!CLASSES.contains(className)) {
+            respond(exchange, 400, error(119, "Unsupported class " + className));
+            return;
+        }
+        final Map<String, String> params = parseQueryString(exchange.getRequestURI().getRawQuery());
+        try {
+            if ("GET".equals(exchange.getRequestMethod()) && path.length == 1) {
+                final JsonObject response = new JsonObject();
+                final JsonArray results = new JsonArray();
+                for (JsonObject result : StandInQuery.fromParams(className, params).find(this)) {
+                    results.add(result);
+                }
+                response.add("results", results);
+                respond(exchange, 200, response);
+            } else if ("GET".equals(exchange.getRequestMethod()) && path.length == 2) {
+                final JsonObject object = get(className, path[1]);
+                if (object == null) {
+                    respond(exchange, 404, error(101, "object not found for get"));
+                } else {
+                    respond(exchange, 200, StandInQuery.fromParams(className, params).project(this, object));
+                }
+            } else if ("POST".equals(exchange.getRequestMethod()) && path.length == 1) {
+                final JsonObject object = new JsonParser()
+                        .parse(new InputStreamReader(exchange.getRequestBody(), UTF8_ENCODING)).getAsJsonObject();
+                object.remove("objectId");
+                final JsonObject saved = save(className, object);
+                final JsonObject response = new JsonObject();
+                response.add("objectId", saved.get("objectId"));
+                response.add("createdAt", saved.get("createdAt"));
+                respond(exchange, 201, response);
+            } else {
+                respond(exchange, 405, error(100, "Unsupported request"));
+            }
+        } catch (RuntimeException e) {
+            respond(exchange, 400, error(102, String.valueOf(e.getMessage())));
+        }
+    }
+
+    private static JsonObject error(final int code, final String message) {
+        final JsonObject error = new JsonObject();
+        error.addProperty("code", code);
+        error.addProperty("error", message);
+        return error;
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final JsonElement body) throws IOException {
+        final byte[] bytes = body.toString().getBytes(UTF8_ENCODING);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static Map<String, String> parseQueryString(final String query) throws UnsupportedEncodingException {
+        final Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            final int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, equals), UTF8_ENCODING),
+                        URLDecoder.decode(pair.substring(equals + 1), UTF8_ENCODING));
+            }
+        }
+        return params;
+    }
+}
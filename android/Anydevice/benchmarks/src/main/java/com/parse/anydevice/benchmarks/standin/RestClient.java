@@ -0,0 +1,125 @@
+package com.parse.anydevice.benchmarks.standin;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal blocking client for the REST API of a {@link ParseStandIn}. Counts the bytes of the responses it reads.
+ * Thread safe.
+ */
+public class RestClient {
+    private static final String UTF8_ENCODING = "UTF-8";
+
+    private final String baseUrl;
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+
+    /**
+     * @param baseUrl Base URL of the REST API, see {@link ParseStandIn#getUrl()}
+     */
+    public RestClient(final String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * Run a query, taking one round trip
+     *
+     * @param query The query
+     * @return The results
+     * @throws IOException If the request fails
+     */
+    public JsonArray find(final RestQuery query) throws IOException {
+        return request(baseUrl + "classes/" + query.getClassName() + "?" + query.toQueryString()).getAsJsonArray("results");
+    }
+
+    /**
+     * @param query The query
+     * @return The first result, or null if there is none
+     * @throws IOException If the request fails
+     */
+    public JsonObject getFirst(final RestQuery query) throws IOException {
+        final JsonArray results = find(query.setLimit(1));
+        return results.size() == 0 ? null : results.get(0).getAsJsonObject();
+    }
+
+    /**
+     * Fetch a single object by id, taking one round trip
+     *
+     * @param className Class of the object
+     * @param objectId  Id of the object
+     * @return The object
+     * @throws IOException If the request fails, e.g. as the object doesn't exist
+     */
+    public JsonObject get(final String className, final String objectId) throws IOException {
+        return request(baseUrl + "classes/" + className + "/" + objectId);
+    }
+
+    /**
+     * @return Number of responses read
+     */
+    public long getResponses() {
+        return responses.get();
+    }
+
+    /**
+     * @return Bytes of response bodies read in total
+     */
+    public long getResponseBytes() {
+        return responseBytes.get();
+    }
+
+    /**
+     * The connection isn't disconnected, so it is kept alive for the next request like the SDK's are
+     */
+    private JsonObject request(final String url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        final int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            throw new IOException("HTTP " + status + " for " + url);
+        }
+        final CountingInputStream in = new CountingInputStream(connection.getInputStream());
+        try {
+            return new JsonParser().parse(new InputStreamReader(in, UTF8_ENCODING)).getAsJsonObject();
+        } finally {
+            in.close();
+            responses.incrementAndGet();
+            responseBytes.addAndGet(in.count);
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.parse.anydevice.benchmarks.standin;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds the parameters of a REST query the way the Parse SDK encodes a ParseQuery, so benchmarks can issue
+ * the same requests as the app
+ */
+public class RestQuery {
+    private static final String UTF8_ENCODING = "UTF-8";
+
+    private final String className;
+    private final JsonObject where = new JsonObject();
+    private final List<String> include = new ArrayList<>();
+    private final List<String> keys = new ArrayList<>();
+    private final List<String> order = new ArrayList<>();
+    private int limit = -1;
+
+    public RestQuery(final String className) {
+        this.className = className;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public RestQuery whereEqualTo(final String key, final JsonElement value) {
+        where.add(key, value);
+        return this;
+    }
+
+    public RestQuery whereEqualTo(final String key, final String value) {
+        return whereEqualTo(key, new JsonPrimitive(value));
+    }
+
+    public RestQuery whereGreaterThan(final String key, final JsonElement value) {
+        return addOperator(key, "$gt", value);
+    }
+
+    public RestQuery whereExists(final String key) {
+        return addOperator(key, "$exists", new JsonPrimitive(true));
+    }
+
+    public RestQuery whereContainedIn(final String key, final List<? extends JsonElement> values) {
+        final JsonArray array = new JsonArray();
+        for (JsonElement value : values) {
+            array.add(value);
+        }
+        return addOperator(key, "$in", array);
+    }
+
+    public RestQuery whereMatchesKeyInQuery(final String key, final String keyInQuery, final RestQuery query) {
+        final JsonObject subQuery = new JsonObject();
+        subQuery.addProperty("className", query.className);
+        subQuery.add("where", query.where);
+        final JsonObject select = new JsonObject();
+        select.add("query", subQuery);
+        select.addProperty("key", keyInQuery);
+        return addOperator(key, "$select", select);
+    }
+
+    public RestQuery include(final String key) {
+        include.add(key);
+        return this;
+    }
+
+    /**
+     * Only return the given keys; dotted keys select fields of included objects
+     */
+    public RestQuery selectKeys(final String... keys) {
+        Collections.addAll(this.keys, keys);
+        return this;
+    }
+
+    public RestQuery orderByAscending(final String key) {
+        order.add(key);
+        return this;
+    }
+
+    public RestQuery orderByDescending(final String key) {
+        order.add("-" + key);
+        return this;
+    }
+
+    public RestQuery setLimit(final int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @return The URL encoded query string, without the leading "?"
+     */
+    public String toQueryString() {
+        try {
+            final StringBuilder query = new StringBuilder("where=").append(URLEncoder.encode(where.toString(), UTF8_ENCODING));
+            if (!include.isEmpty()) {
+                query.append("&include=").append(URLEncoder.encode(join(include), UTF8_ENCODING));
+            }
+            if (!keys.isEmpty()) {
+                query.append("&keys=").append(URLEncoder.encode(join(keys), UTF8_ENCODING));
+            }
+            if (!order.isEmpty()) {
+                query.append("&order=").append(URLEncoder.encode(join(order), UTF8_ENCODING));
+            }
+            if (limit >= 0) {
+                query.append("&limit=").append(limit);
+            }
+            return query.toString();
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return A pointer to an object, as used in constraints
+     */
+    public static JsonObject pointer(final String className, final String objectId) {
+        final JsonObject pointer = new JsonObject();
+        pointer.addProperty("__type", "Pointer");
+        pointer.addProperty("className", className);
+        pointer.addProperty("objectId", objectId);
+        return pointer;
+    }
+
+    private RestQuery addOperator(final String key, final String operator, final JsonElement argument) {
+        JsonElement condition = where.get(key);
+        if (condition == null || !condition.isJsonObject()) {
+            condition = new JsonObject();
+            where.add(key, condition);
+        }
+        condition.getAsJsonObject().add(operator, argument);
+        return this;
+    }
+
+    private static String join(final List<String> values) {
+        final StringBuilder joined = new StringBuilder();
+        for (String value : values) {
+            if (joined.length() > 0) {
+                joined.append(',');
+            }
+            joined.append(value);
+        }
+        return joined.toString();
+    }
+}
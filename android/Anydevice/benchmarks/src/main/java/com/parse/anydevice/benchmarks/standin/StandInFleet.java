@@ -0,0 +1,186 @@
+package com.parse.anydevice.benchmarks.standin;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Seeds a {@link ParseStandIn} with the data the app works with: a user owning a number of boards, each with
+ * its installation, session, latest event and a message, plus the phone's installation, the board models,
+ * infrastructure keys and as many boards of another user, so owner constraints have something to filter.
+ * The user's first board also has a history of earlier events, like a board that has been reporting for a while.
+ * Installations and models carry the fields the embedded SDK and the dashboard set, including those the app
+ * never reads, so that responses are as large as real ones.
+ */
+public class StandInFleet {
+    public static final String OWNER_ID = "owner0001";
+    private static final String OTHER_OWNER_ID = "owner0002";
+    private static final int MODELS = 5;
+    private static final int HISTORY_EVENTS = 200;
+
+    private final List<String> installationIds = new ArrayList<>();
+    private String historyObjectId;
+
+    /**
+     * @param standIn Stand-in to seed
+     * @param devices Number of boards of the user
+     */
+    public StandInFleet(final ParseStandIn standIn, final int devices) {
+        standIn.save("_User", user(OWNER_ID, "owner"));
+        standIn.save("_User", user(OTHER_OWNER_ID, "neighbour"));
+
+        final List<JsonObject> models = new ArrayList<>();
+        for (int i = 0; i < MODELS; i++) {
+            final JsonObject model = new JsonObject();
+            model.addProperty("boardType", "CC3200 LaunchPad rev " + i);
+            model.addProperty("appName", "app" + i);
+            // Like cloud/data/Model.json, only the default model has the field and not every model has an icon
+            if (i == 0) {
+                model.addProperty("default", true);
+            }
+            if (i % 3 != 2) {
+                final JsonObject icon = new JsonObject();
+                icon.addProperty("__type", "File");
+                icon.addProperty("name", "tfss-0b6f3c1e-5d2a-4c8e-9f70-" + String.format(Locale.US, "%012d", i) + "-icon.png");
+                icon.addProperty("url", "http://files.parsetfss.com/7d1f6c8a-2b3e-4f5a-8c9d-0e1f2a3b4c5d/" + icon.get("name").getAsString());
+                model.add("icon", icon);
+            }
+            model.add("ACL", publicReadAcl());
+            models.add(standIn.save("Model", model));
+        }
+
+        final JsonObject phone = new JsonObject();
+        phone.addProperty("installationId", uuid(0));
+        phone.addProperty("deviceType", "android");
+        phone.add("owner", RestQuery.pointer("_User", OWNER_ID));
+        standIn.save("_Installation", phone);
+
+        final long start = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(7);
+        for (int i = 1; i <= devices * 2; i++) {
+            final String ownerId = i <= devices ? OWNER_ID : OTHER_OWNER_ID;
+            final String installationId = uuid(i);
+            final JsonObject model = models.get(i % MODELS);
+            final String updatedAt = ParseStandIn.formatDate(new Date(start + TimeUnit.MINUTES.toMillis(i)));
+
+            final JsonObject installation = new JsonObject();
+            installation.addProperty("installationId", installationId);
+            installation.addProperty("deviceType", "embedded");
+            installation.addProperty("deviceName", String.format(Locale.US, "Board %04d", i));
+            installation.add("owner", RestQuery.pointer("_User", ownerId));
+            installation.add("model", RestQuery.pointer("Model", model.get("objectId").getAsString()));
+            installation.addProperty("appName", model.get("appName").getAsString());
+            installation.addProperty("appVersion", "1.0.0");
+            installation.addProperty("parseVersion", "1.0.1");
+            installation.addProperty("timeZone", "America/Los_Angeles");
+            installation.addProperty("localeIdentifier", "en-US");
+            final JsonArray channels = new JsonArray();
+            channels.add(new JsonPrimitive(""));
+            channels.add(new JsonPrimitive("board-" + installationId));
+            installation.add("channels", channels);
+            installation.add("ACL", ownerAcl(ownerId));
+            installation.addProperty("updatedAt", updatedAt);
+            standIn.save("_Installation", installation);
+            final String installationObjectId = installation.get("objectId").getAsString();
+
+            if (i == 1) {
+                historyObjectId = installationObjectId;
+                for (int j = HISTORY_EVENTS; j > 0; j--) {
+                    final Date createdAt = new Date(start + TimeUnit.MINUTES.toMillis(i) - TimeUnit.SECONDS.toMillis(j));
+                    standIn.save("Event", event(installationObjectId, j % 2 == 0,
+                            ParseStandIn.formatDate(createdAt), ownerId));
+                }
+            }
+            final JsonObject event = event(installationObjectId, i % 2 == 0, updatedAt, ownerId);
+            standIn.save("Event", event);
+            installation.add("latestEvent", RestQuery.pointer("Event", event.get("objectId").getAsString()));
+
+            final JsonObject session = new JsonObject();
+            session.addProperty("installationId", installationId);
+            session.add("user", RestQuery.pointer("_User", ownerId));
+            session.addProperty("sessionToken", "r:" + installationId.replace("-", ""));
+            standIn.save("_Session", session);
+
+            final JsonObject message = new JsonObject();
+            message.addProperty("installationId", installationId);
+            message.addProperty("format", "text/json");
+            message.addProperty("value", "{\"state\":\"on\"}");
+            message.add("owner", RestQuery.pointer("_User", ownerId));
+            standIn.save("Message", message);
+
+            if (ownerId.equals(OWNER_ID)) {
+                installationIds.add(installationId);
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            final JsonObject key = new JsonObject();
+            key.addProperty("ssid", "Home Network " + i);
+            key.addProperty("bssid", String.format(Locale.US, "00:11:22:33:44:%02x", i));
+            key.addProperty("key", "encrypted-" + i);
+            key.addProperty("security", "WPA2");
+            key.add("owner", RestQuery.pointer("_User", OWNER_ID));
+            standIn.save("InfrastructureKey", key);
+        }
+    }
+
+    /**
+     * @return UUIDs of the user's boards
+     */
+    public List<String> getInstallationIds() {
+        return Collections.unmodifiableList(installationIds);
+    }
+
+    /**
+     * @return Object id of the installation of the board with a history of events
+     */
+    public String getHistoryObjectId() {
+        return historyObjectId;
+    }
+
+    private static JsonObject event(final String installationObjectId, final boolean isOn, final String createdAt,
+                                    final String ownerId) {
+        final JsonObject event = new JsonObject();
+        event.addProperty("installationId", installationObjectId);
+        final JsonObject value = new JsonObject();
+        value.addProperty("state", isOn ? "on" : "off");
+        event.add("value", value);
+        event.addProperty("createdAt", createdAt);
+        event.add("ACL", ownerAcl(ownerId));
+        return event;
+    }
+
+    private static JsonObject user(final String objectId, final String username) {
+        final JsonObject user = new JsonObject();
+        user.addProperty("objectId", objectId);
+        user.addProperty("username", username);
+        return user;
+    }
+
+    private static JsonObject ownerAcl(final String ownerId) {
+        final JsonObject access = new JsonObject();
+        access.addProperty("read", true);
+        access.addProperty("write", true);
+        final JsonObject acl = new JsonObject();
+        acl.add(ownerId, access);
+        return acl;
+    }
+
+    private static JsonObject publicReadAcl() {
+        final JsonObject access = new JsonObject();
+        access.addProperty("read", true);
+        final JsonObject acl = new JsonObject();
+        acl.add("*", access);
+        return acl;
+    }
+
+    private static String uuid(final int index) {
+        return String.format(Locale.US, "00000000-0000-4000-8000-%012d", index);
+    }
+}
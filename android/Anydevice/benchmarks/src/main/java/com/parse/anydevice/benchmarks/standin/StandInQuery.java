@@ -0,0 +1,333 @@
+package com.parse.anydevice.benchmarks.standin;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A query as sent in the parameters of a REST request, evaluated against the objects of a {@link ParseStandIn}.
+ * <p/>
+ * Supports the parameters where, include (dotted paths), keys (dotted for included objects), order (comma separated, "-" for descending),
+ * limit and skip. Constraints in where can be plain values or pointers for equality, or objects with the
+ * operators $ne, $lt, $lte, $gt, $gte, $in, $nin, $exists, $select (whereMatchesKeyInQuery) and $inQuery.
+ * Dates can be given as {"__type": "Date"} objects or ISO strings.
+ */
+class StandInQuery {
+    private static final int DEFAULT_LIMIT = 100;
+
+    private final String className;
+    private final JsonObject where;
+    private final List<String> include = new ArrayList<>();
+    private final Set<String> keys;
+    private final String order;
+    private final int limit;
+    private final int skip;
+
+    private StandInQuery(final String className, final JsonObject where, final String include, final String keys,
+                         final String order, final int limit, final int skip) {
+        this.className = className;
+        this.where = where == null ? new JsonObject() : where;
+        if (include != null) {
+            Collections.addAll(this.include, include.split(","));
+        }
+        this.keys = keys == null ? null : new HashSet<>();
+        if (keys != null) {
+            Collections.addAll(this.keys, keys.split(","));
+        }
+        this.order = order;
+        this.limit = limit;
+        this.skip = skip;
+    }
+
+    static StandInQuery fromParams(final String className, final Map<String, String> params) {
+        final String where = params.get("where");
+        final String limit = params.get("limit");
+        final String skip = params.get("skip");
+        return new StandInQuery(className, where == null ? null : new JsonParser().parse(where).getAsJsonObject(),
+                params.get("include"), params.get("keys"), params.get("order"),
+                limit == null ? DEFAULT_LIMIT : Integer.parseInt(limit), skip == null ? 0 : Integer.parseInt(skip));
+    }
+
+    private static StandInQuery fromJson(final JsonObject query) {
+        final String className = query.get("className").getAsString();
+        final JsonObject where = query.has("where") ? query.getAsJsonObject("where") : null;
+        // Subqueries aren't limited unless they ask to be
+        final int limit = query.has("limit") ? query.get("limit").getAsInt() : Integer.MAX_VALUE;
+        return new StandInQuery(className, where, null, null, null, limit, 0);
+    }
+
+    /**
+     * @return Matching objects, ordered, paged and with pointers included, as copies
+     */
+    List<JsonObject> find(final ParseStandIn store) {
+        final JsonObject resolvedWhere = resolveSubqueries(store, where);
+        final List<JsonObject> matches = new ArrayList<>();
+        for (JsonObject object : store.getAll(className)) {
+            if (matches(object, resolvedWhere)) {
+                matches.add(object);
+            }
+        }
+        if (order != null) {
+            Collections.sort(matches, new Comparator<JsonObject>() {
+                @Override
+                public int compare(final JsonObject lhs, final JsonObject rhs) {
+                    for (String key : order.split(",")) {
+                        final boolean descending = key.startsWith("-");
+                        final String field = descending ? key.substring(1) : key;
+                        final int result = compareValues(lhs.get(field), rhs.get(field));
+                        if (result != 0) {
+                            return descending ? -result : result;
+                        }
+                    }
+                    return 0;
+                }
+            });
+        }
+        final List<JsonObject> results = new ArrayList<>();
+        for (int i = skip; i < matches.size() && results.size() < limit; i++) {
+            results.add(project(store, matches.get(i)));
+        }
+        return results;
+    }
+
+    /**
+     * @return Copy of the object with only the requested keys and the included pointers resolved
+     */
+    JsonObject project(final ParseStandIn store, final JsonObject object) {
+        final JsonObject result = select(object, keys);
+        for (String path : include) {
+            includePath(store, result, path, keys);
+        }
+        return result;
+    }
+
+    /**
+     * @param keys Keys to keep, null for all; "a.b" keeps "a"
+     * @return Copy of the object with only the given keys, objectId, createdAt and updatedAt
+     */
+    private static JsonObject select(final JsonObject object, final Set<String> keys) {
+        final JsonObject result = new JsonObject();
+        for (Map.Entry<String, JsonElement> field : object.entrySet()) {
+            final String key = field.getKey();
+            if (keys == null || keys.contains(key) || nestedKeys(keys, key) != null
+                    || key.equals("objectId") || key.equals("createdAt") || key.equals("updatedAt")) {
+                result.add(key, field.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The keys below the given one, e.g. "b" for key "a" and keys "a.b", or null if the object under the
+     *         key is to be returned whole
+     */
+    private static Set<String> nestedKeys(final Set<String> keys, final String key) {
+        if (keys == null || keys.contains(key)) {
+            return null;
+        }
+        Set<String> nested = null;
+        for (String selected : keys) {
+            if (selected.startsWith(key + ".")) {
+                if (nested == null) {
+                    nested = new HashSet<>();
+                }
+                nested.add(selected.substring(key.length() + 1));
+            }
+        }
+        return nested;
+    }
+
+    private static void includePath(final ParseStandIn store, final JsonObject object, final String path, final Set<String> keys) {
+        final int dot = path.indexOf('.');
+        final String key = dot < 0 ? path : path.substring(0, dot);
+        final JsonElement value = object.get(key);
+        if (value == null || !value.isJsonObject()) {
+            return;
+        }
+        JsonObject target = value.getAsJsonObject();
+        if (isType(target, "Pointer")) {
+            final JsonObject pointee = store.get(target.get("className").getAsString(), target.get("objectId").getAsString());
+            if (pointee == null) {
+                return;
+            }
+            final JsonObject included = select(pointee, nestedKeys(keys, key));
+            included.addProperty("__type", "Object");
+            included.addProperty("className", target.get("className").getAsString());
+            object.add(key, included);
+            target = included;
+        }
+        if (dot >= 0) {
+            includePath(store, target, path.substring(dot + 1), nestedKeys(keys, key));
+        }
+    }
+
+    /**
+     * Run the subqueries of $select and $inQuery once, turning them into $in constraints
+     */
+    private static JsonObject resolveSubqueries(final ParseStandIn store, final JsonObject where) {
+        final JsonObject resolved = new JsonObject();
+        for (Map.Entry<String, JsonElement> constraint : where.entrySet()) {
+            final JsonElement condition = constraint.getValue();
+            if (!condition.isJsonObject() || !isOperator(condition.getAsJsonObject())) {
+                resolved.add(constraint.getKey(), condition);
+                continue;
+            }
+            final JsonObject operators = new JsonObject();
+            for (Map.Entry<String, JsonElement> operator : condition.getAsJsonObject().entrySet()) {
+                final JsonArray values = new JsonArray();
+                switch (operator.getKey()) {
+                    case "$select": {
+                        final JsonObject select = operator.getValue().getAsJsonObject();
+                        final String key = select.get("key").getAsString();
+                        for (JsonObject match : fromJson(select.getAsJsonObject("query")).find(store)) {
+                            if (match.has(key)) {
+                                values.add(match.get(key));
+                            }
+                        }
+                        operators.add("$in", values);
+                        break;
+                    }
+                    case "$inQuery": {
+                        final StandInQuery query = fromJson(operator.getValue().getAsJsonObject());
+                        for (JsonObject match : query.find(store)) {
+                            values.add(pointer(query.className, match.get("objectId").getAsString()));
+                        }
+                        operators.add("$in", values);
+                        break;
+                    }
+                    default:
+                        operators.add(operator.getKey(), operator.getValue());
+                }
+            }
+            resolved.add(constraint.getKey(), operators);
+        }
+        return resolved;
+    }
+
+    private static boolean matches(final JsonObject object, final JsonObject where) {
+        for (Map.Entry<String, JsonElement> constraint : where.entrySet()) {
+            final JsonElement value = object.get(constraint.getKey());
+            final JsonElement condition = constraint.getValue();
+            if (condition.isJsonObject() && isOperator(condition.getAsJsonObject())) {
+                for (Map.Entry<String, JsonElement> operator : condition.getAsJsonObject().entrySet()) {
+                    if (!matchesOperator(value, operator.getKey(), operator.getValue())) {
+                        return false;
+                    }
+                }
+            } else if (!equal(value, condition)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesOperator(final JsonElement value, final String operator, final JsonElement argument) {
+        switch (operator) {
+            case "$ne":
+                return !equal(value, argument);
+            case "$lt":
+                return value != null && compareValues(value, argument) < 0;
+            case "$lte":
+                return value != null && compareValues(value, argument) <= 0;
+            case "$gt":
+                return value != null && compareValues(value, argument) > 0;
+            case "$gte":
+                return value != null && compareValues(value, argument) >= 0;
+            case "$in":
+                return containsEqual(argument.getAsJsonArray(), value);
+            case "$nin":
+                return !containsEqual(argument.getAsJsonArray(), value);
+            case "$exists":
+                final boolean exists = value != null && !value.isJsonNull();
+                return exists == argument.getAsBoolean();
+            default:
+                throw new IllegalArgumentException("Unsupported operator " + operator);
+        }
+    }
+
+    private static boolean isOperator(final JsonObject condition) {
+        for (Map.Entry<String, JsonElement> entry : condition.entrySet()) {
+            if (!entry.getKey().startsWith("$")) {
+                return false;
+            }
+        }
+        return !condition.entrySet().isEmpty();
+    }
+
+    private static JsonObject pointer(final String className, final String objectId) {
+        final JsonObject pointer = new JsonObject();
+        pointer.addProperty("__type", "Pointer");
+        pointer.addProperty("className", className);
+        pointer.addProperty("objectId", objectId);
+        return pointer;
+    }
+
+    private static boolean containsEqual(final JsonArray array, final JsonElement value) {
+        for (JsonElement element : array) {
+            if (equal(value, element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equal(final JsonElement a, final JsonElement b) {
+        final Object left = normalize(a);
+        final Object right = normalize(b);
+        return left == null ? right == null : left.equals(right);
+    }
+
+    private static int compareValues(final JsonElement a, final JsonElement b) {
+        final Object left = normalize(a);
+        final Object right = normalize(b);
+        if (left == null || right == null) {
+            return left == null ? (right == null ? 0 : -1) : 1;
+        }
+        if (left instanceof Double && right instanceof Double) {
+            return ((Double) left).compareTo((Double) right);
+        }
+        return left.toString().compareTo(right.toString());
+    }
+
+    /**
+     * Reduce a value to something comparable: numbers to doubles, dates to ISO strings, pointers and
+     * included objects to their object id
+     */
+    private static Object normalize(final JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return null;
+        }
+        if (element.isJsonPrimitive()) {
+            final JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isNumber()) {
+                return primitive.getAsDouble();
+            }
+            return primitive.isBoolean() ? primitive.getAsBoolean() : primitive.getAsString();
+        }
+        if (element.isJsonObject()) {
+            final JsonObject object = element.getAsJsonObject();
+            if (isType(object, "Date")) {
+                return object.get("iso").getAsString();
+            }
+            if (isType(object, "Pointer") || isType(object, "Object")) {
+                return object.get("className").getAsString() + "$" + object.get("objectId").getAsString();
+            }
+        }
+        return element.toString();
+    }
+
+    private static boolean isType(final JsonObject object, final String type) {
+        final JsonElement typeElement = object.get("__type");
+        return typeElement != null && type.equals(typeElement.getAsString());
+    }
+}